@@ -0,0 +1,118 @@
+package benchmark;
+
+import computer.ParseException;
+import computer.instruction.Instruction;
+import computer.model.CompiledProgram;
+import computer.model.Computer;
+import computer.model.Editor;
+import computer.model.HaltReason;
+import computer.model.QueueInputChannel;
+import computer.model.RunResult;
+import java.util.ArrayList;
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+import language.Messages;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Throughput of the computer running representative programs. Programs are
+ * reloaded whenever they halt so every benchmark keeps running the same code.
+ * step is measured in half steps (a fetch or an execute) and run and compiled
+ * in whole instructions.
+ *
+ * @author tomblanchard
+ *
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ComputerBenchmark {
+
+  private static final int STEPS = 10000;
+
+  @Param({"multiply", "sort", "primes"})
+  public String program;
+
+  private ArrayList<Instruction> instructions;
+  private int[] input;
+  private Computer computer;
+  private QueueInputChannel channel;
+  private CompiledProgram compiled;
+
+  /**
+   * Assembles the program and loads it into a computer.
+   */
+  @Setup
+  public void setUp() throws ParseException {
+    Messages.setCurrentLocale(Locale.ENGLISH);
+    Editor editor = new Editor();
+    editor.setText(Programs.source(program));
+    editor.parse();
+    instructions = editor.getInstructions();
+    input = Programs.input(program);
+
+    computer = new Computer();
+    channel = new QueueInputChannel();
+    computer.registerInputChannel(channel);
+    reload();
+    compiled = new CompiledProgram(computer);
+  }
+
+  private void reload() {
+    channel.setInput(input);
+    computer.load(instructions);
+  }
+
+  @Benchmark
+  @OperationsPerInvocation(STEPS)
+  public int step() {
+    for (int i = 0; i < STEPS; i++) {
+      if (computer.step() != HaltReason.CYCLE_LIMIT) {
+        reload();
+      }
+    }
+    return computer.getAccumulator();
+  }
+
+  @Benchmark
+  @OperationsPerInvocation(STEPS)
+  public int run() {
+    long cycles = 0;
+    while (cycles < STEPS) {
+      RunResult result = computer.run(STEPS - cycles);
+      cycles += result.getCycles();
+      if (result.getHaltReason() != HaltReason.CYCLE_LIMIT) {
+        reload();
+      }
+    }
+    return computer.getAccumulator();
+  }
+
+  @Benchmark
+  @OperationsPerInvocation(STEPS)
+  public int compiled() {
+    long cycles = 0;
+    while (cycles < STEPS) {
+      RunResult result = compiled.run(STEPS - cycles);
+      cycles += result.getCycles();
+      if (result.getHaltReason() != HaltReason.CYCLE_LIMIT) {
+        reload();
+      }
+    }
+    return computer.getAccumulator();
+  }
+}
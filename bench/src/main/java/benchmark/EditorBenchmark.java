@@ -0,0 +1,76 @@
+package benchmark;
+
+import computer.ParseException;
+import computer.model.Computer;
+import computer.model.Editor;
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+import language.Messages;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Time to assemble and format a program, as happens every time the user
+ * presses compile. The large source fills memory and every line has a long
+ * comment (comments can only go at the end of a line).
+ *
+ * @author tomblanchard
+ *
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class EditorBenchmark {
+
+  private static final int COMMENT_WORDS_PER_LINE = 200;
+
+  @Param({"small", "large"})
+  public String size;
+
+  private String source;
+
+  /**
+   * Builds the source to be assembled.
+   */
+  @Setup
+  public void setUp() {
+    Messages.setCurrentLocale(Locale.ENGLISH);
+    if (size.equals("small")) {
+      source = Programs.PRIMES;
+      return;
+    }
+
+    StringBuilder sb = new StringBuilder();
+    for (int i = 0; i < Computer.DEFAULT_MEMORY_SIZE - 1; i++) {
+      sb.append("label").append(i)
+          .append(" ADD label").append((i * 7) % (Computer.DEFAULT_MEMORY_SIZE - 1))
+          .append(" //");
+      for (int j = 0; j < COMMENT_WORDS_PER_LINE; j++) {
+        sb.append(" word").append(j);
+      }
+      sb.append('\n');
+    }
+    sb.append("HLT\n");
+    source = sb.toString();
+  }
+
+  @Benchmark
+  public String assemble() throws ParseException {
+    Editor editor = new Editor();
+    editor.setText(source);
+    editor.parse();
+    return editor.format();
+  }
+}
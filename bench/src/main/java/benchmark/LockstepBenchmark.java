@@ -0,0 +1,121 @@
+package benchmark;
+
+import computer.ParseException;
+import computer.instruction.Instruction;
+import computer.model.CompiledProgram;
+import computer.model.Computer;
+import computer.model.CoverageMap;
+import computer.model.Editor;
+import computer.model.LockstepComputer;
+import computer.model.QueueInputChannel;
+import computer.model.StreamingOutputSink;
+import java.io.StringWriter;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import language.Messages;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Cost per input vector of running the multiply program over many random
+ * inputs on one thread, all together on a lockstep computer or one after
+ * another on a compiled computer. Also the cost of recording the coverage
+ * of every lane.
+ *
+ * @author tomblanchard
+ *
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class LockstepBenchmark {
+
+  private static final int VECTORS = 256;
+  private static final long MAX_CYCLES = 100000;
+
+  private ArrayList<Instruction> instructions;
+  private List<int[]> inputs;
+  private LockstepComputer lockstep;
+  private LockstepComputer covered;
+  private CoverageMap coverage;
+  private Computer computer;
+  private QueueInputChannel channel;
+  private StringWriter transcript;
+  private CompiledProgram compiled;
+
+  /**
+   * Assembles the program and makes the input vectors.
+   */
+  @Setup
+  public void setUp() throws ParseException {
+    Messages.setCurrentLocale(Locale.ENGLISH);
+    Editor editor = new Editor();
+    editor.setText(Programs.MULTIPLY);
+    editor.parse();
+    instructions = editor.getInstructions();
+
+    Random random = new Random(42);
+    inputs = new ArrayList<int[]>();
+    for (int i = 0; i < VECTORS; i++) {
+      inputs.add(new int[] {random.nextInt(100), random.nextInt(100)});
+    }
+
+    lockstep = new LockstepComputer(instructions);
+    covered = new LockstepComputer(instructions);
+    covered.setCoverage(true);
+    coverage = new CoverageMap();
+    computer = new Computer();
+    channel = new QueueInputChannel();
+    transcript = new StringWriter();
+    computer.registerInputChannel(channel);
+    computer.registerOutputSink(new StreamingOutputSink(transcript));
+    computer.load(instructions);
+    compiled = new CompiledProgram(computer);
+  }
+
+  @Benchmark
+  @OperationsPerInvocation(VECTORS)
+  public int lockstep() {
+    lockstep.run(inputs, MAX_CYCLES);
+    return lockstep.getAccumulator(0);
+  }
+
+  @Benchmark
+  @OperationsPerInvocation(VECTORS)
+  public int lockstepWithCoverage() {
+    covered.run(inputs, MAX_CYCLES);
+    int count = 0;
+    for (int lane = 0; lane < VECTORS; lane++) {
+      covered.getCoverage(lane, coverage);
+      count += coverage.count();
+    }
+    return count;
+  }
+
+  @Benchmark
+  @OperationsPerInvocation(VECTORS)
+  public int separate() {
+    for (int[] input : inputs) {
+      computer.load(instructions);
+      transcript.getBuffer().setLength(0);
+      channel.setInput(input);
+      compiled.run(MAX_CYCLES);
+    }
+    return computer.getAccumulator();
+  }
+}
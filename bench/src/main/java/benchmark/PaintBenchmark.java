@@ -0,0 +1,96 @@
+package benchmark;
+
+import computer.ParseException;
+import computer.model.Computer;
+import computer.model.Editor;
+import computer.model.HaltReason;
+import computer.model.QueueInputChannel;
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+import language.Messages;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import ui.ComputerPanel;
+
+/**
+ * Time to draw the computer into an offscreen image, both when nothing has
+ * changed and with the computer stepped between paints.
+ *
+ * @author tomblanchard
+ *
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = "-Djava.awt.headless=true")
+public class PaintBenchmark {
+
+  private static final int WIDTH = 800;
+  private static final int HEIGHT = 600;
+
+  private Computer computer;
+  private QueueInputChannel channel;
+  private Editor editor;
+  private ComputerPanel panel;
+  private BufferedImage image;
+  private Graphics2D graphics;
+
+  /**
+   * Loads a program and sizes the panel as it would be in a typical window.
+   */
+  @Setup
+  public void setUp() throws ParseException {
+    Messages.setCurrentLocale(Locale.ENGLISH);
+    editor = new Editor();
+    editor.setText(Programs.PRIMES);
+    editor.parse();
+
+    computer = new Computer();
+    channel = new QueueInputChannel();
+    computer.registerInputChannel(channel);
+    reload();
+
+    panel = new ComputerPanel(computer);
+    panel.setSize(WIDTH, HEIGHT);
+    image = new BufferedImage(WIDTH, HEIGHT, BufferedImage.TYPE_INT_RGB);
+    graphics = image.createGraphics();
+  }
+
+  private void reload() {
+    channel.setInput(Programs.PRIMES_INPUT);
+    computer.load(editor.getInstructions());
+  }
+
+  @TearDown
+  public void tearDown() {
+    graphics.dispose();
+  }
+
+  @Benchmark
+  public BufferedImage paint() {
+    panel.paint(graphics);
+    return image;
+  }
+
+  @Benchmark
+  public BufferedImage stepAndPaint() {
+    if (computer.step() != HaltReason.CYCLE_LIMIT) {
+      reload();
+    }
+    panel.paint(graphics);
+    return image;
+  }
+}
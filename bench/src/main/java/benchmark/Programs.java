@@ -0,0 +1,179 @@
+package benchmark;
+
+/**
+ * Representative LMC programs for the benchmarks, along with their input.
+ *
+ * @author tomblanchard
+ *
+ */
+final class Programs {
+
+  private Programs() {
+  }
+
+  /**
+   * Multiplies two inputs by repeated addition.
+   */
+  static final String MULTIPLY = String.join("\n",
+      "        INP",
+      "        STA a",
+      "        INP",
+      "        STA b",
+      "loop    LDA b",
+      "        BRZ done",
+      "        SUB one",
+      "        STA b",
+      "        LDA r",
+      "        ADD a",
+      "        STA r",
+      "        BRA loop",
+      "done    LDA r",
+      "        OUT",
+      "        HLT",
+      "a       DAT",
+      "b       DAT",
+      "r       DAT",
+      "one     DAT 1",
+      "");
+
+  static final int[] MULTIPLY_INPUT = {37, 91};
+
+  /**
+   * Bubble sorts ten values that start in reverse order. LMC has no indirect
+   * addressing so the loads and stores of the array are built at run time.
+   */
+  static final String SORT = String.join("\n",
+      "        LDA len",
+      "        SUB one",
+      "        STA pass",
+      "outer   LDA pass",
+      "        BRZ fin",
+      "        LDA zero",
+      "        STA i",
+      "inner   LDA i",
+      "        SUB pass",
+      "        BRP endin",
+      "        LDA ldai",
+      "        ADD i",
+      "        STA g1",
+      "g1      DAT",
+      "        STA x",
+      "        LDA ldai1",
+      "        ADD i",
+      "        STA g2",
+      "g2      DAT",
+      "        STA y",
+      "        SUB x",
+      "        BRP next",
+      "        LDA stai",
+      "        ADD i",
+      "        STA s1",
+      "        LDA stai1",
+      "        ADD i",
+      "        STA s2",
+      "        LDA y",
+      "s1      DAT",
+      "        LDA x",
+      "s2      DAT",
+      "next    LDA i",
+      "        ADD one",
+      "        STA i",
+      "        BRA inner",
+      "endin   LDA pass",
+      "        SUB one",
+      "        STA pass",
+      "        BRA outer",
+      "fin     LDA arr",
+      "        OUT",
+      "        HLT",
+      "ldai    LDA arr",
+      "ldai1   LDA arr1",
+      "stai    STA arr",
+      "stai1   STA arr1",
+      "zero    DAT 0",
+      "one     DAT 1",
+      "len     DAT 10",
+      "pass    DAT",
+      "i       DAT",
+      "x       DAT",
+      "y       DAT",
+      "arr     DAT 90",
+      "arr1    DAT 81",
+      "        DAT 72",
+      "        DAT 63",
+      "        DAT 54",
+      "        DAT 45",
+      "        DAT 36",
+      "        DAT 27",
+      "        DAT 18",
+      "        DAT 9",
+      "");
+
+  static final int[] SORT_INPUT = {};
+
+  /**
+   * Outputs the primes up to its input by trial division.
+   */
+  static final String PRIMES = String.join("\n",
+      "        INP",
+      "        STA max",
+      "        LDA two",
+      "        STA n",
+      "outer   LDA max",
+      "        SUB n",
+      "        BRP cont",
+      "        HLT",
+      "cont    LDA two",
+      "        STA d",
+      "inner   LDA d",
+      "        SUB n",
+      "        BRZ prime",
+      "        LDA n",
+      "modlp   SUB d",
+      "        BRZ notp",
+      "        BRP modlp",
+      "        LDA d",
+      "        ADD one",
+      "        STA d",
+      "        BRA inner",
+      "prime   LDA n",
+      "        OUT",
+      "notp    LDA n",
+      "        ADD one",
+      "        STA n",
+      "        BRA outer",
+      "max     DAT",
+      "n       DAT",
+      "d       DAT",
+      "one     DAT 1",
+      "two     DAT 2",
+      "");
+
+  static final int[] PRIMES_INPUT = {100};
+
+  static String source(String name) {
+    switch (name) {
+      case "multiply":
+        return MULTIPLY;
+      case "sort":
+        return SORT;
+      case "primes":
+        return PRIMES;
+      default:
+        throw new IllegalArgumentException("No program " + name);
+    }
+  }
+
+  static int[] input(String name) {
+    switch (name) {
+      case "multiply":
+        return MULTIPLY_INPUT;
+      case "sort":
+        return SORT_INPUT;
+      case "primes":
+        return PRIMES_INPUT;
+      default:
+        throw new IllegalArgumentException("No program " + name);
+    }
+  }
+}
@@ -0,0 +1,145 @@
+package computer;
+
+import computer.model.CompiledProgram;
+import computer.model.Computer;
+import computer.model.Editor;
+import computer.model.HaltReason;
+import computer.model.InputChannel;
+import computer.model.QueueInputChannel;
+import computer.model.ReaderInputChannel;
+import computer.model.RunResult;
+import computer.model.StreamingOutputSink;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+
+/**
+ * Command line entry point that assembles and runs a single program without a
+ * UI. Only the core packages are used so no AWT or Swing classes are loaded,
+ * which keeps start up fast enough to run from scripts and tests.
+ *
+ * <p>Input is taken from the command line if any is given, otherwise it is
+ * read from standard input as the program asks for it. Output is written to
+ * standard output, one number per line. Anything other than a normal halt is
+ * reported on standard error and gives a non-zero exit status.
+ *
+ * @author tomblanchard
+ *
+ */
+public class Cli {
+
+  // Stop programs that never halt, can be changed with --max-cycles.
+  private static final long DEFAULT_MAX_CYCLES = 100000000L;
+
+  private static final int EXIT_HALTED = 0;
+  private static final int EXIT_ERROR = 1;
+  private static final int EXIT_NOT_HALTED = 2;
+
+  private Cli() {
+  }
+
+  /**
+   * Command line entry point.
+   * @param args Optionally --max-cycles and a number and --memory-size and a
+   *     number, then the program file and then any input values.
+   */
+  public static void main(String[] args) {
+    System.exit(run(args));
+  }
+
+  private static int run(String[] args) {
+    long maxCycles = DEFAULT_MAX_CYCLES;
+    int memorySize = Computer.DEFAULT_MEMORY_SIZE;
+    int next = 0;
+    try {
+      while (next + 1 < args.length && args[next].startsWith("--")) {
+        if (args[next].equals("--max-cycles")) {
+          maxCycles = Long.parseLong(args[next + 1]);
+        } else if (args[next].equals("--memory-size")) {
+          memorySize = Integer.parseInt(args[next + 1]);
+        } else {
+          return usage();
+        }
+        next += 2;
+      }
+    } catch (NumberFormatException e) {
+      return usage();
+    }
+    if (!Computer.isValidMemorySize(memorySize)) {
+      System.err.println("Memory size must be a power of 10 from 100 to "
+          + Computer.MAX_MEMORY_SIZE);
+      return EXIT_ERROR;
+    }
+    if (next >= args.length) {
+      return usage();
+    }
+
+    String source;
+    try {
+      source = new String(Files.readAllBytes(Paths.get(args[next])), StandardCharsets.UTF_8);
+    } catch (IOException e) {
+      System.err.println("Couldn't read " + args[next] + ": " + e.getMessage());
+      return EXIT_ERROR;
+    }
+
+    Editor editor = new Editor(memorySize);
+    editor.setText(source);
+    try {
+      editor.parse();
+    } catch (ParseException e) {
+      System.err.println(CoreMessages.getTranslatedString("LINE") + " " + e.getLineNumber()
+          + ": " + e.getMessage());
+      return EXIT_ERROR;
+    }
+
+    InputChannel input;
+    if (next + 1 < args.length) {
+      int[] values = new int[args.length - next - 1];
+      try {
+        for (int i = 0; i < values.length; i++) {
+          values[i] = Integer.parseInt(args[next + 1 + i]);
+        }
+      } catch (NumberFormatException e) {
+        System.err.println("Input must be an integer: " + e.getMessage());
+        return EXIT_ERROR;
+      }
+      input = new QueueInputChannel(values);
+    } else {
+      input = new ReaderInputChannel(new InputStreamReader(System.in, StandardCharsets.UTF_8));
+    }
+
+    Computer computer = new Computer(memorySize);
+    StreamingOutputSink output = new StreamingOutputSink(System.out);
+    computer.registerInputChannel(input);
+    computer.registerOutputSink(output);
+    computer.load(editor.getInstructions());
+
+    RunResult result;
+    try {
+      result = new CompiledProgram(computer).run(maxCycles);
+    } catch (NumberFormatException e) {
+      System.err.println("Input must be an integer: " + e.getMessage());
+      return EXIT_ERROR;
+    } finally {
+      try {
+        output.flush();
+      } catch (IOException e) {
+        System.err.println("Couldn't write output: " + e.getMessage());
+      }
+    }
+
+    if (result.getHaltReason() != HaltReason.HALTED) {
+      System.err.println(result.getHaltReason() + " after " + result.getCycles() + " cycles");
+      return EXIT_NOT_HALTED;
+    }
+    return EXIT_HALTED;
+  }
+
+  private static int usage() {
+    System.err.println("Usage: Cli [--max-cycles <cycles>] [--memory-size <addresses>]"
+        + " <program.lmc> [input...]");
+    return EXIT_ERROR;
+  }
+}
@@ -0,0 +1,72 @@
+package computer;
+
+import java.util.Locale;
+import java.util.MissingResourceException;
+import java.util.ResourceBundle;
+
+/**
+ * Looks up the localised strings the core needs, eg parse errors, in the
+ * same LMCStrings bundle as the UI. Only depends on java.base so that the
+ * core runs without the desktop module. English is used until another locale
+ * is set, the UI passes on its locale whenever it changes.
+ *
+ * @author tomblanchard
+ *
+ */
+public final class CoreMessages {
+
+  //The search string used to find and replace tokens in strings.
+  private static final String replaceTokenSearch = "\\*\\!\\!\\*";
+
+  //The default error message when a string cannot be found.
+  private static final String error = "<LOCALISATION ERROR>";
+
+  private static volatile ResourceBundle strings;
+
+  private CoreMessages() {
+  }
+
+  /**
+   * Sets the locale strings are looked up in.
+   * @param locale The new locale.
+   */
+  public static synchronized void setLocale(Locale locale) {
+    strings = ResourceBundle.getBundle("LMCStrings", locale);
+  }
+
+  /**
+   * Returns a translated string based on the current locale.
+   * @param messageName The name of the string being requested. See
+   *     LMCStrings.properties for examples.
+   * @return The translated string.
+   */
+  public static String getTranslatedString(String messageName) {
+    ResourceBundle bundle = strings;
+    if (bundle == null) {
+      bundle = loadDefaultLocale();
+    }
+    try {
+      return bundle.getString(messageName);
+    } catch (MissingResourceException mre) {
+      return error;
+    }
+  }
+
+  private static synchronized ResourceBundle loadDefaultLocale() {
+    if (strings == null) {
+      strings = ResourceBundle.getBundle("LMCStrings", Locale.ENGLISH);
+    }
+    return strings;
+  }
+
+  /**
+   * Inserts the token string into a localised string. Input string will be
+   * unchanged if the token could not be inserted.
+   * @param inputString The string into which token will be inserted.
+   * @param token The token to be inserted into inputString.
+   * @return The modified string.
+   */
+  public static String insertToken(final String inputString, String token) {
+    return inputString.replaceAll(replaceTokenSearch, token);
+  }
+}
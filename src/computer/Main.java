@@ -1,7 +1,9 @@
 package computer;
 
+import computer.metrics.Metrics;
 import computer.model.Computer;
 import computer.model.Editor;
+import computer.model.Profiler;
 import java.util.Locale;
 import javax.swing.SwingUtilities;
 import language.Messages;
@@ -24,6 +26,9 @@ public class Main {
    */
   private Main() {
   }
+
+  // Number of instructions that can be stepped back through in the UI.
+  private static final int UNDO_HISTORY = 100000;
   
   //Splash screen isn't working with this but I think it needs to be a part of the manifest.
   //Doesn't really matter anyway
@@ -50,11 +55,20 @@ public class Main {
     //Set the current language, defaults to English
     Messages.setCurrentLocale(Locale.ENGLISH);
 
+    //Make the engine and UI metrics visible to JMX tools such as JConsole
+    Metrics.getGlobal().registerMBean();
+
     //Create the UI on the Swing thread
     SwingUtilities.invokeLater(new Runnable() {
       public void run() {
         //Create our computer and editor models
         Computer computer = new Computer();
+
+        //Remember enough of the history for students to step back through
+        computer.setUndoHistory(UNDO_HISTORY);
+
+        //Count what is executed so it can be shown as a heatmap
+        computer.setProfiler(new Profiler());
         
         //If we are aon OSX then use the platform standard style menu
         String lcOsName = System.getProperty("os.name").toLowerCase();
@@ -69,15 +83,15 @@ public class Main {
         ControlPanel controlPanel = new ControlPanel(computer);
         
         //Register various parts of the UI as computer model listeners 
-        computer.registerPropertyChangeListener(computerPanel);
-        computer.registerPropertyChangeListener(controlPanel, "reset");
+        computer.registerComputerListener(computerPanel);
+        computer.registerComputerListener(controlPanel);
         
         Editor editor = new Editor();
 
         EditorPanel editorPanel = new EditorPanel(editor, computerPanel);
         
-        //Register a default input channel to the computer model (for future dev)
-        computer.registerInputChannel(controlPanel);
+        //No input channel is registered, the control panel asks the user for
+        //input whenever the computer stops because it needs some
         
         //Create the JFrame that holds the rest of the display.
         new LMCDisplay(computerPanel, controlPanel, editorPanel);
@@ -1,7 +1,5 @@
 package computer;
 
-import language.Messages;
-
 /**
  * Represents an exception when parsing the LMC assembly code.
  * Each exception also contains a reference to the offending
@@ -41,7 +39,7 @@ public class ParseException extends Exception {
    * location.
    */
   public String getMessage() {
-    return Messages.insertToken(super.getMessage(), badToken);
+    return CoreMessages.insertToken(super.getMessage(), badToken);
   }
 
 }
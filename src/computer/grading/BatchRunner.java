@@ -0,0 +1,196 @@
+package computer.grading;
+
+import computer.CoreMessages;
+import computer.ParseException;
+import computer.instruction.Instruction;
+import computer.model.AssemblyCache;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Assembles and runs every .lmc file in a directory and writes a report of
+ * the results. Files are read, assembled and run on a bounded pool of worker
+ * threads so that reading one submission overlaps with running another.
+ *
+ * <p>Each line of the report is a comma separated record of the file name,
+ * the halt reason (or PARSE_ERROR / IO_ERROR / ERROR), the number of cycles
+ * and the output or error message. The name and the last field are quoted.
+ *
+ * <p>Submissions are assembled through an {@link AssemblyCache}, so copies
+ * of the same program (and reruns of the same cohort) are only assembled once.
+ *
+ * @author tomblanchard
+ *
+ */
+public class BatchRunner {
+
+  private final long maxCycles;
+  private final int[] input;
+  private final int threads;
+  private AssemblyCache cache = new AssemblyCache();
+
+  /**
+   * Constructs a batch runner that uses one thread per available processor.
+   * @param maxCycles The most instructions any single submission may execute.
+   * @param input The input given to every submission.
+   */
+  public BatchRunner(long maxCycles, int[] input) {
+    this(maxCycles, input, Runtime.getRuntime().availableProcessors());
+  }
+
+  /**
+   * Constructs a batch runner.
+   * @param maxCycles The most instructions any single submission may execute.
+   * @param input The input given to every submission.
+   * @param threads The number of worker threads.
+   */
+  public BatchRunner(long maxCycles, int[] input, int threads) {
+    this.maxCycles = maxCycles;
+    this.input = input;
+    this.threads = threads;
+  }
+
+  /**
+   * Sets the cache submissions are assembled through, eg to share one
+   * between runners. Each runner has its own cache by default.
+   * @param cache The cache.
+   */
+  public void setAssemblyCache(AssemblyCache cache) {
+    this.cache = cache;
+  }
+
+  /**
+   * Runs every .lmc file in directory, writing one line per file to report.
+   * Lines are written in the order the submissions finish.
+   *
+   * @param directory The directory of submissions.
+   * @param report Where the report is written.
+   * @return The number of submissions processed.
+   * @throws IOException If the directory can't be read or the report can't be written.
+   * @throws InterruptedException If interrupted while waiting for the submissions to finish.
+   */
+  public int run(Path directory, Writer report) throws IOException, InterruptedException {
+
+    // A bounded queue with the caller running overflow keeps the directory
+    // listing from getting too far ahead of the workers.
+    ThreadPoolExecutor executor = new ThreadPoolExecutor(threads, threads, 0L,
+        TimeUnit.MILLISECONDS, new ArrayBlockingQueue<Runnable>(threads * 4),
+        new ThreadPoolExecutor.CallerRunsPolicy());
+
+    // The first failure to write the report, rethrown once every task is done
+    AtomicReference<IOException> writeError = new AtomicReference<IOException>();
+
+    int count = 0;
+    try (DirectoryStream<Path> files = Files.newDirectoryStream(directory, "*.lmc")) {
+      for (Path file : files) {
+        executor.execute(() -> {
+          String line = grade(file);
+          synchronized (report) {
+            try {
+              report.write(line);
+            } catch (IOException e) {
+              writeError.compareAndSet(null, e);
+            }
+          }
+        });
+        count++;
+      }
+    } finally {
+      executor.shutdown();
+      executor.awaitTermination(Long.MAX_VALUE, TimeUnit.DAYS);
+    }
+    if (writeError.get() != null) {
+      throw writeError.get();
+    }
+    report.flush();
+    return count;
+  }
+
+  /**
+   * Reads, assembles and runs a single submission. Anything a submission
+   * throws is reported as an ERROR so that one bad file can't stop the others
+   * being reported.
+   * @param file The submission.
+   * @return The line of the report for this submission.
+   */
+  private String grade(Path file) {
+    String name = file.getFileName().toString();
+    try {
+      return gradeSource(file, name);
+    } catch (RuntimeException e) {
+      return record(name, "ERROR", 0, e.toString());
+    }
+  }
+
+  private String gradeSource(Path file, String name) {
+    String source;
+    try {
+      source = new String(Files.readAllBytes(file), StandardCharsets.UTF_8);
+    } catch (IOException e) {
+      return record(name, "IO_ERROR", 0, e.getMessage());
+    }
+
+    ArrayList<Instruction> program;
+    try {
+      program = cache.assemble(source);
+    } catch (ParseException e) {
+      return record(name, "PARSE_ERROR", 0, CoreMessages.getTranslatedString("LINE") + " "
+          + e.getLineNumber() + ": " + e.getMessage());
+    }
+
+    GradeResult result = new Grader(program, maxCycles).grade(input);
+    return record(name, result.getHaltReason().toString(), result.getCycles(),
+        result.getOutput());
+  }
+
+  /**
+   * Builds a line of the report, quoting the name and the detail.
+   */
+  private static String record(String name, String status, long cycles, String detail) {
+    return quote(name) + "," + status + "," + cycles + "," + quote(detail) + "\n";
+  }
+
+  /**
+   * Quotes a field, doubling any quotes and flattening any line breaks.
+   */
+  private static String quote(String field) {
+    String text = field == null ? "" : field.trim();
+    return "\"" + text.replace("\"", "\"\"").replace('\r', ' ').replace('\n', ' ') + "\"";
+  }
+
+  /**
+   * Command line entry point.
+   * @param args The submission directory, the report file, the maximum number
+   *     of cycles per submission and then any input values.
+   */
+  public static void main(String[] args) throws Exception {
+    if (args.length < 3) {
+      System.err.println(
+          "Usage: BatchRunner <submission directory> <report file> <max cycles> [input...]");
+      System.exit(1);
+    }
+
+    int[] input = new int[args.length - 3];
+    for (int i = 3; i < args.length; i++) {
+      input[i - 3] = Integer.parseInt(args[i]);
+    }
+
+    BatchRunner runner = new BatchRunner(Long.parseLong(args[2]), input);
+    try (BufferedWriter report = Files.newBufferedWriter(Paths.get(args[1]),
+        StandardCharsets.UTF_8)) {
+      int count = runner.run(Paths.get(args[0]), report);
+      System.out.println("Graded " + count + " submissions");
+    }
+  }
+}
@@ -0,0 +1,382 @@
+package computer.grading;
+
+import computer.ParseException;
+import computer.instruction.Instruction;
+import computer.model.Computer;
+import computer.model.CoverageMap;
+import computer.model.Editor;
+import computer.model.QueueInputChannel;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Generates test inputs for a program that between them execute as many of
+ * its instructions, and take as many directions of its BRZ and BRP branches,
+ * as possible.
+ *
+ * <p>A corpus of input vectors starts with an empty vector and a random one.
+ * Workers (one per thread of a {@link ForkJoinPool}) repeatedly pick a vector
+ * from the corpus, mutate it (changing, inserting, deleting or splicing in
+ * values) and run the program on it with a {@link CoverageMap} attached. Any
+ * vector that covers something new is trimmed to the inputs the program
+ * actually read and added to the corpus. Once the budget of runs is used up
+ * the corpus is reduced to a small set of vectors with the same coverage by
+ * repeatedly taking the vector that adds the most.
+ *
+ * @author tomblanchard
+ *
+ */
+public class CoverageFuzzer {
+
+  // Mutations stacked onto a vector for each run, up to.
+  private static final int MAX_MUTATIONS = 4;
+  // Runs taken from the shared budget at a time by each worker.
+  private static final int RUNS_PER_BATCH = 64;
+
+  /**
+   * A vector in the corpus and what it covers.
+   */
+  private static final class Entry {
+    private final int[] input;
+    private final CoverageMap coverage;
+
+    Entry(int[] input, CoverageMap coverage) {
+      this.input = input;
+      this.coverage = coverage;
+    }
+  }
+
+  private final ArrayList<Instruction> program;
+  private final long maxCycles;
+  private final ForkJoinPool pool;
+  private int memorySize = Computer.DEFAULT_MEMORY_SIZE;
+  private int min = 0;
+  private int max = 999;
+  private int maxInputs = 10;
+  private long seed = 0;
+
+  // Shared between the workers, guarded by this.
+  private final List<Entry> corpus = new ArrayList<Entry>();
+  private CoverageMap coverage;
+
+  /**
+   * Constructs a fuzzer that uses the common fork/join pool.
+   * @param program The assembled program, see {@link Editor#getInstructions()}.
+   * @param maxCycles The most instructions any single run may execute.
+   */
+  public CoverageFuzzer(ArrayList<Instruction> program, long maxCycles) {
+    this(program, maxCycles, ForkJoinPool.commonPool());
+  }
+
+  /**
+   * Constructs a fuzzer.
+   * @param program The assembled program, see {@link Editor#getInstructions()}.
+   * @param maxCycles The most instructions any single run may execute.
+   * @param pool The pool to run the program in.
+   * @throws IllegalArgumentException If the program or pool is missing or
+   *     maxCycles is negative.
+   */
+  public CoverageFuzzer(ArrayList<Instruction> program, long maxCycles, ForkJoinPool pool) {
+    if (program == null || pool == null) {
+      throw new IllegalArgumentException("A program and a pool are needed");
+    }
+    if (maxCycles < 0) {
+      throw new IllegalArgumentException("Invalid max cycles " + maxCycles);
+    }
+    this.program = program;
+    this.maxCycles = maxCycles;
+    this.pool = pool;
+  }
+
+  /**
+   * Sets the number of memory addresses of the computers the program is run
+   * on. Must match the size the program was assembled for.
+   * @param memorySize The number of memory addresses, see {@link Computer#Computer(int)}.
+   */
+  public void setMemorySize(int memorySize) {
+    this.memorySize = memorySize;
+  }
+
+  /**
+   * Sets the range of the generated input values, 0 to 999 by default.
+   * @param min The smallest input value.
+   * @param max The largest input value.
+   * @throws IllegalArgumentException If min is more than max.
+   */
+  public void setInputRange(int min, int max) {
+    if (min > max) {
+      throw new IllegalArgumentException("Invalid input range " + min + " to " + max);
+    }
+    this.min = min;
+    this.max = max;
+  }
+
+  /**
+   * Sets the most input values in a generated vector, 10 by default.
+   * @param maxInputs The longest input vector.
+   * @throws IllegalArgumentException If maxInputs is less than 1.
+   */
+  public void setMaxInputs(int maxInputs) {
+    if (maxInputs < 1) {
+      throw new IllegalArgumentException("Invalid max inputs " + maxInputs);
+    }
+    this.maxInputs = maxInputs;
+  }
+
+  /**
+   * Sets the seed of the random mutations. With more than one worker the
+   * corpus also depends on how the runs are interleaved.
+   * @param seed The seed.
+   */
+  public void setSeed(long seed) {
+    this.seed = seed;
+  }
+
+  /**
+   * Runs the program on generated inputs and returns a small set of them
+   * with the best coverage found.
+   *
+   * @param runs The number of times to run the program.
+   * @return The input vectors, in the order they were chosen (most coverage
+   *     first), empty if the program covers nothing whatever its input.
+   * @throws IllegalArgumentException If runs is negative.
+   */
+  public List<int[]> fuzz(long runs) {
+    if (runs < 0) {
+      throw new IllegalArgumentException("Invalid number of runs " + runs);
+    }
+    corpus.clear();
+    coverage = new CoverageMap(memorySize);
+    SplittableRandom random = new SplittableRandom(seed);
+    Worker seeder = new Worker(random.split());
+    seeder.tryInput(new int[0]);
+    seeder.tryInput(seeder.randomInput());
+    if (corpus.isEmpty()) {
+      // Nothing to mutate, eg the first instruction is invalid or there are no cycles
+      return new ArrayList<int[]>();
+    }
+
+    AtomicLong remaining = new AtomicLong(runs);
+    List<Callable<Void>> workers = new ArrayList<Callable<Void>>();
+    for (int i = 0; i < pool.getParallelism(); i++) {
+      Worker worker = new Worker(random.split());
+      workers.add(() -> {
+        worker.run(remaining);
+        return null;
+      });
+    }
+    pool.invokeAll(workers);
+    return minimise();
+  }
+
+  /**
+   * Get everything covered by the inputs found by the last {@link #fuzz(long)}.
+   * @return The combined coverage of the corpus.
+   */
+  public synchronized CoverageMap getCoverage() {
+    return coverage.copy();
+  }
+
+  /**
+   * Adds an input to the corpus if it covers something new.
+   * @return The coverage of the whole corpus afterwards.
+   */
+  private synchronized CoverageMap offer(int[] input, CoverageMap covered) {
+    if (coverage.hasNew(covered)) {
+      coverage.merge(covered);
+      corpus.add(new Entry(input, covered.copy()));
+    }
+    return coverage.copy();
+  }
+
+  private synchronized int[] pick(SplittableRandom random) {
+    return corpus.get(random.nextInt(corpus.size())).input;
+  }
+
+  /**
+   * Greedily picks the entry that adds the most coverage (the shortest if
+   * several add as much) until nothing adds any more.
+   */
+  private synchronized List<int[]> minimise() {
+    List<int[]> chosen = new ArrayList<int[]>();
+    CoverageMap covered = new CoverageMap(memorySize);
+    List<Entry> left = new ArrayList<Entry>(corpus);
+    while (true) {
+      Entry best = null;
+      int bestGain = 0;
+      for (Entry entry : left) {
+        int gain = covered.countNew(entry.coverage);
+        if (gain > bestGain || gain == bestGain && gain > 0
+            && entry.input.length < best.input.length) {
+          best = entry;
+          bestGain = gain;
+        }
+      }
+      if (best == null) {
+        return chosen;
+      }
+      covered.merge(best.coverage);
+      chosen.add(best.input);
+      left.remove(best);
+    }
+  }
+
+  /**
+   * Runs mutated inputs on its own computer.
+   */
+  private final class Worker {
+    private final SplittableRandom random;
+    private final Computer computer = new Computer(memorySize);
+    private final QueueInputChannel channel = new QueueInputChannel();
+    private final CoverageMap covered = new CoverageMap(memorySize);
+    // This worker's copy of the corpus coverage, refreshed when it finds something.
+    private CoverageMap known = new CoverageMap(memorySize);
+
+    Worker(SplittableRandom random) {
+      this.random = random;
+      computer.registerInputChannel(channel);
+      computer.setCoverageMap(covered);
+    }
+
+    void run(AtomicLong remaining) {
+      long left;
+      while ((left = remaining.getAndAdd(-RUNS_PER_BATCH)) > 0) {
+        // The last batch only takes what is left of the budget
+        long batch = Math.min(RUNS_PER_BATCH, left);
+        for (int i = 0; i < batch; i++) {
+          tryInput(mutate(pick(random)));
+        }
+      }
+    }
+
+    void tryInput(int[] input) {
+      computer.load(program);
+      channel.setInput(input);
+      computer.run(maxCycles);
+      if (known.hasNew(covered)) {
+        // Only keep the inputs that were read
+        int[] read = Arrays.copyOf(input, input.length - channel.remaining());
+        known = offer(read, covered);
+      }
+    }
+
+    int[] randomInput() {
+      int[] input = new int[1 + random.nextInt(maxInputs)];
+      for (int i = 0; i < input.length; i++) {
+        input[i] = randomValue();
+      }
+      return input;
+    }
+
+    private int randomValue() {
+      return min + (int) random.nextLong((long) max - min + 1);
+    }
+
+    private int[] mutate(int[] input) {
+      int[] mutated = input.clone();
+      int mutations = 1 + random.nextInt(MAX_MUTATIONS);
+      for (int i = 0; i < mutations; i++) {
+        mutated = mutateOnce(mutated);
+      }
+      return mutated;
+    }
+
+    private int[] mutateOnce(int[] input) {
+      int length = input.length;
+      switch (random.nextInt(length == 0 ? 2 : 7)) {
+        // Add a value to the end
+        case 0:
+          if (length < maxInputs) {
+            input = Arrays.copyOf(input, length + 1);
+            input[length] = randomValue();
+          }
+          break;
+        // Splice the end of another vector on
+        case 1:
+          int[] other = pick(random);
+          int from = other.length == 0 ? 0 : random.nextInt(other.length);
+          int keep = length == 0 ? 0 : random.nextInt(length + 1);
+          int total = Math.min(maxInputs, keep + other.length - from);
+          int[] spliced = Arrays.copyOf(input, total);
+          for (int i = keep; i < total; i++) {
+            spliced[i] = other[from + i - keep];
+          }
+          input = spliced;
+          break;
+        // Replace a value
+        case 2:
+          input[random.nextInt(length)] = randomValue();
+          break;
+        // Replace a value with an edge of the range or zero
+        case 3:
+          int[] edges = {min, max, Math.max(min, Math.min(max, 0)),
+              Math.max(min, Math.min(max, 1))};
+          input[random.nextInt(length)] = edges[random.nextInt(edges.length)];
+          break;
+        // Nudge a value up or down a little
+        case 4:
+          int position = random.nextInt(length);
+          long nudged = (long) input[position] + random.nextInt(33) - 16;
+          input[position] = (int) Math.max(min, Math.min(max, nudged));
+          break;
+        // Insert a value
+        case 5:
+          if (length < maxInputs) {
+            int at = random.nextInt(length + 1);
+            int[] inserted = new int[length + 1];
+            System.arraycopy(input, 0, inserted, 0, at);
+            inserted[at] = randomValue();
+            System.arraycopy(input, at, inserted, at + 1, length - at);
+            input = inserted;
+          }
+          break;
+        // Delete a value
+        default:
+          int gone = random.nextInt(length);
+          int[] deleted = new int[length - 1];
+          System.arraycopy(input, 0, deleted, 0, gone);
+          System.arraycopy(input, gone + 1, deleted, gone, length - gone - 1);
+          input = deleted;
+      }
+      return input;
+    }
+  }
+
+  /**
+   * Command line entry point. Prints one input vector per line, values
+   * separated by spaces, followed by a summary of the coverage on standard error.
+   * @param args The program, the maximum number of cycles per run and the
+   *     number of runs.
+   */
+  public static void main(String[] args) throws IOException, ParseException {
+    if (args.length < 3) {
+      System.err.println("Usage: CoverageFuzzer <program.lmc> <max cycles> <runs>");
+      System.exit(1);
+    }
+
+    Editor editor = new Editor();
+    editor.setText(new String(Files.readAllBytes(Paths.get(args[0])), StandardCharsets.UTF_8));
+    editor.parse();
+
+    CoverageFuzzer fuzzer = new CoverageFuzzer(editor.getInstructions(), Long.parseLong(args[1]));
+    List<int[]> inputs = fuzzer.fuzz(Long.parseLong(args[2]));
+    for (int[] input : inputs) {
+      StringBuilder line = new StringBuilder();
+      for (int value : input) {
+        line.append(line.length() == 0 ? "" : " ").append(value);
+      }
+      System.out.println(line);
+    }
+    System.err.println(inputs.size() + " inputs covering " + fuzzer.getCoverage().count()
+        + " instructions and branch directions");
+  }
+}
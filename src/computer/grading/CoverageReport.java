@@ -0,0 +1,238 @@
+package computer.grading;
+
+import computer.ParseException;
+import computer.instruction.Instruction;
+import computer.instruction.Mnemonic;
+import computer.model.Computer;
+import computer.model.CoverageMap;
+import computer.model.Editor;
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Reader;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Adds up the coverage of many runs of a program, eg every test input of an
+ * assignment, counting for each address how many runs executed it and for
+ * each BRZ and BRP how many runs took it and how many didn't. Give one to
+ * {@link Grader#setCoverage(CoverageReport)} to collect coverage while
+ * grading, or add the {@link CoverageMap} of each run yourself.
+ *
+ * <p>The counts can be written out next to the program's source as an
+ * annotated listing, showing the lines no run reached and the branches that
+ * always went the same way.
+ *
+ * @author tomblanchard
+ *
+ */
+public class CoverageReport {
+  private final int memorySize;
+  private final long[] executed;
+  private final long[] taken;
+  private final long[] notTaken;
+  private long runs = 0;
+
+  /**
+   * Constructs a report for a computer with the default memory size.
+   */
+  public CoverageReport() {
+    this(Computer.DEFAULT_MEMORY_SIZE);
+  }
+
+  /**
+   * Constructs a report.
+   * @param memorySize The number of memory addresses.
+   */
+  public CoverageReport(int memorySize) {
+    this.memorySize = memorySize;
+    executed = new long[memorySize];
+    taken = new long[memorySize];
+    notTaken = new long[memorySize];
+  }
+
+  /**
+   * Adds the coverage of one run. Only the addresses the run executed are
+   * visited and nothing is allocated.
+   * @param map The coverage of the run, the same size as this report.
+   */
+  public synchronized void add(CoverageMap map) {
+    if (map.getMemorySize() != memorySize) {
+      throw new IllegalArgumentException("Coverage map is for " + map.getMemorySize()
+          + " addresses, not " + memorySize);
+    }
+    for (int address = map.nextExecuted(0); address >= 0;
+        address = map.nextExecuted(address + 1)) {
+      executed[address]++;
+      if (map.isTaken(address)) {
+        taken[address]++;
+      }
+      if (map.isNotTaken(address)) {
+        notTaken[address]++;
+      }
+    }
+    runs++;
+  }
+
+  /**
+   * Adds the runs of another report to this one.
+   * @param other A report of the same size.
+   */
+  public synchronized void merge(CoverageReport other) {
+    synchronized (other) {
+      for (int address = 0; address < memorySize; address++) {
+        executed[address] += other.executed[address];
+        taken[address] += other.taken[address];
+        notTaken[address] += other.notTaken[address];
+      }
+      runs += other.runs;
+    }
+  }
+
+  public int getMemorySize() {
+    return memorySize;
+  }
+
+  public synchronized long getRuns() {
+    return runs;
+  }
+
+  /**
+   * Get the number of runs that executed an address at least once.
+   * @param address The address.
+   * @return The number of runs.
+   */
+  public synchronized long getRunsExecuted(int address) {
+    return executed[address];
+  }
+
+  /**
+   * Get the number of runs in which a BRZ or BRP was taken at least once.
+   * @param address The address of the branch.
+   * @return The number of runs.
+   */
+  public synchronized long getRunsTaken(int address) {
+    return taken[address];
+  }
+
+  /**
+   * Get the number of runs in which a BRZ or BRP fell through at least once.
+   * @param address The address of the branch.
+   * @return The number of runs.
+   */
+  public synchronized long getRunsNotTaken(int address) {
+    return notTaken[address];
+  }
+
+  /**
+   * Writes the formatted source of a program (see {@link Editor#format()})
+   * with each line prefixed by the number of runs that executed it, or
+   * ##### for an instruction no run executed and - for unexecuted data. Each
+   * BRZ and BRP also shows the runs that took it and the runs that didn't.
+   * A summary follows the listing:
+   * <pre>
+   *    runs  taken/not  addr  source
+   *      12                0       INP
+   *      12       4/8      1       BRZ END
+   *   #####                2       OUT
+   *       -               12  ONE  DAT 1
+   *
+   *   12 runs, 10/11 instructions executed, 3/4 branch directions taken
+   * </pre>
+   * @param editor The parsed program the runs were of.
+   * @param writer Where the listing is written.
+   * @throws IOException If the writer fails.
+   */
+  public synchronized void writeListing(Editor editor, Writer writer) throws IOException {
+    // Formatting sorts the instructions, one line each
+    String[] lines = editor.format().split("\n");
+    ArrayList<Instruction> instructions = editor.getInstructions();
+
+    int instructionCount = 0;
+    int instructionsExecuted = 0;
+    int branchDirections = 0;
+    int branchDirectionsTaken = 0;
+
+    writer.write(String.format("%8s  %9s  %4s  %s%n", "runs", "taken/not", "addr", "source"));
+    for (int line = 0; line < instructions.size(); line++) {
+      Instruction instruction = instructions.get(line);
+      int address = instruction.getInstructionAddress();
+      Mnemonic mnemonic = instruction.getMnemonic();
+
+      String count = Long.toString(executed[address]);
+      if (mnemonic != Mnemonic.DAT) {
+        instructionCount++;
+        if (executed[address] == 0) {
+          count = "#####";
+        } else {
+          instructionsExecuted++;
+        }
+      } else if (executed[address] == 0) {
+        count = "-";
+      }
+
+      String branches = "";
+      if (mnemonic == Mnemonic.BRZ || mnemonic == Mnemonic.BRP) {
+        branches = taken[address] + "/" + notTaken[address];
+        branchDirections += 2;
+        branchDirectionsTaken += (taken[address] != 0 ? 1 : 0) + (notTaken[address] != 0 ? 1 : 0);
+      }
+
+      String source = line < lines.length ? lines[line] : instruction.toString();
+      writer.write(String.format("%8s  %9s  %4d  %s%n", count, branches, address, source));
+    }
+
+    writer.write(String.format("%n%d runs, %d/%d instructions executed,"
+        + " %d/%d branch directions taken%n", runs, instructionsExecuted, instructionCount,
+        branchDirectionsTaken, branchDirections));
+    writer.flush();
+  }
+
+  /**
+   * Command line entry point. Grades the program on input vectors, one per
+   * line with values separated by spaces (as written by
+   * {@link CoverageFuzzer#main(String[])}), and prints the annotated listing.
+   * @param args The program, the maximum number of cycles per run and then
+   *     optionally the file of input vectors, standard input if not given.
+   */
+  public static void main(String[] args) throws IOException, ParseException {
+    if (args.length < 2) {
+      System.err.println("Usage: CoverageReport <program.lmc> <max cycles> [inputs]");
+      System.exit(1);
+    }
+
+    Editor editor = new Editor();
+    editor.setText(new String(Files.readAllBytes(Paths.get(args[0])), StandardCharsets.UTF_8));
+    editor.parse();
+
+    List<int[]> inputs = new ArrayList<int[]>();
+    try (Reader reader = args.length > 2
+        ? Files.newBufferedReader(Paths.get(args[2]), StandardCharsets.UTF_8)
+        : new InputStreamReader(System.in, StandardCharsets.UTF_8)) {
+      BufferedReader lines = new BufferedReader(reader);
+      String line;
+      while ((line = lines.readLine()) != null) {
+        line = line.trim();
+        String[] values = line.isEmpty() ? new String[0] : line.split("\\s+");
+        int[] input = new int[values.length];
+        for (int i = 0; i < values.length; i++) {
+          input[i] = Integer.parseInt(values[i]);
+        }
+        inputs.add(input);
+      }
+    }
+
+    CoverageReport report = new CoverageReport();
+    Grader grader = new Grader(editor.getInstructions(), Long.parseLong(args[1]));
+    grader.setCoverage(report);
+    grader.grade(inputs);
+    report.writeListing(editor,
+        new OutputStreamWriter(System.out, StandardCharsets.UTF_8));
+  }
+}
@@ -0,0 +1,265 @@
+package computer.grading;
+
+import computer.ParseException;
+import computer.instruction.Instruction;
+import computer.model.Computer;
+import computer.model.Editor;
+import computer.model.LockstepComputer;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Checks a candidate program (eg a student's submission) against a reference
+ * solution by running both on every input vector of an input space and
+ * comparing what they output and why they stopped.
+ *
+ * <p>The input space is either every combination of values in a range (eg
+ * every pair of numbers from 0 to 999) or a reproducible random sample of it.
+ * Input vectors are numbered and handed out in order, in chunks, to one worker
+ * per core of a {@link ForkJoinPool}. Each worker runs its chunk of both
+ * programs on {@link LockstepComputer}s. Once a difference has been found no
+ * chunks after it are started, and the result is always the lowest numbered
+ * differing input vector no matter which worker found what first.
+ *
+ * @author tomblanchard
+ *
+ */
+public class EquivalenceChecker {
+
+  // Most input vectors each worker runs in lockstep at a time, fewer if the
+  // memory is too big for that many lanes.
+  private static final int VECTORS_PER_CHUNK = 256;
+
+  /**
+   * Fills in an input vector from its position in the input space.
+   */
+  private interface InputSpace {
+    void fill(long index, int[] vector);
+  }
+
+  private final ArrayList<Instruction> reference;
+  private final ArrayList<Instruction> candidate;
+  private final long maxCycles;
+  private final ForkJoinPool pool;
+  private int memorySize = Computer.DEFAULT_MEMORY_SIZE;
+
+  /**
+   * Constructs a checker that uses the common fork/join pool.
+   * @param reference The assembled reference program, see {@link Editor#getInstructions()}.
+   * @param candidate The assembled program to check.
+   * @param maxCycles The most instructions either program may execute for one input vector.
+   */
+  public EquivalenceChecker(ArrayList<Instruction> reference, ArrayList<Instruction> candidate,
+      long maxCycles) {
+    this(reference, candidate, maxCycles, ForkJoinPool.commonPool());
+  }
+
+  /**
+   * Constructs a checker.
+   * @param reference The assembled reference program, see {@link Editor#getInstructions()}.
+   * @param candidate The assembled program to check.
+   * @param maxCycles The most instructions either program may execute for one input vector.
+   * @param pool The pool to run the programs in.
+   */
+  public EquivalenceChecker(ArrayList<Instruction> reference, ArrayList<Instruction> candidate,
+      long maxCycles, ForkJoinPool pool) {
+    this.reference = reference;
+    this.candidate = candidate;
+    this.maxCycles = maxCycles;
+    this.pool = pool;
+  }
+
+  /**
+   * Sets the number of memory addresses of the computers the programs are run
+   * on. Must match the size the programs were assembled for.
+   * @param memorySize The number of memory addresses, see {@link Computer#Computer(int)}.
+   */
+  public void setMemorySize(int memorySize) {
+    this.memorySize = memorySize;
+  }
+
+  /**
+   * Checks every input vector of inputCount values between min and max. The
+   * vectors are numbered with the first value changing slowest, so the
+   * lowest differing vector is the first in numeric order.
+   *
+   * @param inputCount The number of input values in each vector.
+   * @param min The smallest input value.
+   * @param max The largest input value.
+   * @return The outcome of the check.
+   * @throws IllegalArgumentException If the range or count is invalid, or
+   *     there are too many input vectors to number.
+   */
+  public EquivalenceResult checkExhaustive(int inputCount, int min, int max) {
+    checkInputs(inputCount, min, max);
+    long values = (long) max - min + 1;
+    long vectors = 1;
+    try {
+      for (int i = 0; i < inputCount; i++) {
+        vectors = Math.multiplyExact(vectors, values);
+      }
+    } catch (ArithmeticException e) {
+      throw new IllegalArgumentException("Input space is too large, sample it instead");
+    }
+    return check(vectors, inputCount, (index, vector) -> {
+      for (int i = vector.length - 1; i >= 0; i--) {
+        vector[i] = (int) (min + index % values);
+        index /= values;
+      }
+    });
+  }
+
+  /**
+   * Checks a random sample of input vectors of inputCount values between min
+   * and max. The same seed always gives the same sample.
+   *
+   * @param inputCount The number of input values in each vector.
+   * @param min The smallest input value.
+   * @param max The largest input value.
+   * @param samples The number of input vectors to check.
+   * @param seed The seed of the sample.
+   * @return The outcome of the check.
+   * @throws IllegalArgumentException If the range, count or number of samples is invalid.
+   */
+  public EquivalenceResult checkSampled(int inputCount, int min, int max, long samples,
+      long seed) {
+    checkInputs(inputCount, min, max);
+    if (samples < 0) {
+      throw new IllegalArgumentException("Invalid number of samples " + samples);
+    }
+    long values = (long) max - min + 1;
+    return check(samples, inputCount, (index, vector) -> {
+      // Each value depends only on the seed and its position so workers agree
+      for (int i = 0; i < vector.length; i++) {
+        long random = mix(seed + mix(index * vector.length + i));
+        vector[i] = (int) (min + Long.remainderUnsigned(random, values));
+      }
+    });
+  }
+
+  private static void checkInputs(int inputCount, int min, int max) {
+    if (inputCount < 0) {
+      throw new IllegalArgumentException("Invalid input count " + inputCount);
+    }
+    if (min > max) {
+      throw new IllegalArgumentException("Invalid input range " + min + " to " + max);
+    }
+  }
+
+  /**
+   * Scrambles the bits of a value (the SplitMix64 finaliser).
+   */
+  private static long mix(long value) {
+    value = (value ^ (value >>> 30)) * 0xBF58476D1CE4E5B9L;
+    value = (value ^ (value >>> 27)) * 0x94D049BB133111EBL;
+    return value ^ (value >>> 31);
+  }
+
+  private EquivalenceResult check(long vectors, int inputCount, InputSpace space) {
+    int chunkSize = Math.min(VECTORS_PER_CHUNK, LockstepComputer.getMaxLanes(memorySize));
+    AtomicLong nextChunk = new AtomicLong();
+    AtomicLong firstMismatch = new AtomicLong(Long.MAX_VALUE);
+    LongAdder checked = new LongAdder();
+
+    List<Callable<Void>> workers = new ArrayList<Callable<Void>>();
+    for (int i = 0; i < pool.getParallelism(); i++) {
+      workers.add(() -> {
+        runChunks(vectors, inputCount, space, chunkSize, nextChunk, firstMismatch, checked);
+        return null;
+      });
+    }
+    pool.invokeAll(workers);
+
+    long mismatch = firstMismatch.get();
+    if (mismatch == Long.MAX_VALUE) {
+      return new EquivalenceResult(checked.sum());
+    }
+
+    // Rerun the differing input to report both runs
+    int[] input = new int[inputCount];
+    space.fill(mismatch, input);
+    Grader referenceGrader = new Grader(reference, maxCycles);
+    Grader candidateGrader = new Grader(candidate, maxCycles);
+    referenceGrader.setMemorySize(memorySize);
+    candidateGrader.setMemorySize(memorySize);
+    return new EquivalenceResult(checked.sum(), mismatch, referenceGrader.grade(input),
+        candidateGrader.grade(input));
+  }
+
+  /**
+   * Takes chunks of input vectors in order and runs both programs on them
+   * until every chunk has been taken or a difference has been found before
+   * the next chunk.
+   */
+  private void runChunks(long vectors, int inputCount, InputSpace space, int chunkSize,
+      AtomicLong nextChunk, AtomicLong firstMismatch, LongAdder checked) {
+    LockstepComputer referenceLanes = new LockstepComputer(reference, memorySize);
+    LockstepComputer candidateLanes = new LockstepComputer(candidate, memorySize);
+    int[][] buffer = new int[chunkSize][inputCount];
+
+    while (true) {
+      long start = nextChunk.getAndIncrement() * chunkSize;
+      if (start >= vectors || start > firstMismatch.get()) {
+        return;
+      }
+      int size = (int) Math.min(chunkSize, vectors - start);
+      for (int i = 0; i < size; i++) {
+        space.fill(start + i, buffer[i]);
+      }
+      List<int[]> inputs = Arrays.asList(buffer).subList(0, size);
+
+      referenceLanes.run(inputs, maxCycles);
+      candidateLanes.run(inputs, maxCycles);
+      checked.add(size);
+
+      for (int lane = 0; lane < size; lane++) {
+        if (referenceLanes.getHaltReason(lane) != candidateLanes.getHaltReason(lane)
+            || !referenceLanes.getOutput(lane).equals(candidateLanes.getOutput(lane))) {
+          long index = start + lane;
+          firstMismatch.accumulateAndGet(index, Math::min);
+          break;
+        }
+      }
+    }
+  }
+
+  /**
+   * Command line entry point.
+   * @param args The reference program, the program to check, the maximum
+   *     number of cycles per run, the number of inputs per run and then
+   *     optionally the number of random samples to check rather than every
+   *     input vector. Input values are from 0 to 999.
+   */
+  public static void main(String[] args) throws IOException, ParseException {
+    if (args.length < 4) {
+      System.err.println("Usage: EquivalenceChecker <reference.lmc> <candidate.lmc> <max cycles>"
+          + " <inputs per run> [samples]");
+      System.exit(1);
+    }
+
+    EquivalenceChecker checker = new EquivalenceChecker(assemble(args[0]), assemble(args[1]),
+        Long.parseLong(args[2]));
+    int inputCount = Integer.parseInt(args[3]);
+    EquivalenceResult result = args.length > 4
+        ? checker.checkSampled(inputCount, 0, 999, Long.parseLong(args[4]), 0)
+        : checker.checkExhaustive(inputCount, 0, 999);
+    System.out.println(result);
+    System.exit(result.isEquivalent() ? 0 : 2);
+  }
+
+  private static ArrayList<Instruction> assemble(String file) throws IOException, ParseException {
+    Editor editor = new Editor();
+    editor.setText(new String(Files.readAllBytes(Paths.get(file)), StandardCharsets.UTF_8));
+    editor.parse();
+    return editor.getInstructions();
+  }
+}
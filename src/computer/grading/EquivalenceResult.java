@@ -0,0 +1,99 @@
+package computer.grading;
+
+/**
+ * The result of checking a candidate program against a reference program,
+ * see {@link EquivalenceChecker}.
+ *
+ * @author tomblanchard
+ *
+ */
+public class EquivalenceResult {
+  private final long vectorsChecked;
+  private final long mismatchIndex;
+  private final GradeResult reference;
+  private final GradeResult candidate;
+
+  /**
+   * Constructs the result of a check that found no difference.
+   * @param vectorsChecked The number of input vectors both programs were run on.
+   */
+  public EquivalenceResult(long vectorsChecked) {
+    this(vectorsChecked, -1, null, null);
+  }
+
+  /**
+   * Constructs the result of a check that found a difference.
+   * @param vectorsChecked The number of input vectors both programs were run on.
+   * @param mismatchIndex The position of the differing input vector in the input space.
+   * @param reference How the reference program ran on that input.
+   * @param candidate How the candidate program ran on that input.
+   */
+  public EquivalenceResult(long vectorsChecked, long mismatchIndex, GradeResult reference,
+      GradeResult candidate) {
+    this.vectorsChecked = vectorsChecked;
+    this.mismatchIndex = mismatchIndex;
+    this.reference = reference;
+    this.candidate = candidate;
+  }
+
+  /**
+   * Did the programs behave the same for every input vector checked.
+   * @return true if no difference was found.
+   */
+  public boolean isEquivalent() {
+    return reference == null;
+  }
+
+  /**
+   * Get the number of input vectors run. Checking stops early once a
+   * difference is found, so this can be less than the size of the input space.
+   * @return The number of input vectors both programs were run on.
+   */
+  public long getVectorsChecked() {
+    return vectorsChecked;
+  }
+
+  /**
+   * Get the position of the first differing input vector in the input space.
+   * @return The index, or -1 if the programs are equivalent.
+   */
+  public long getMismatchIndex() {
+    return mismatchIndex;
+  }
+
+  /**
+   * Get the first input vector the programs differ on.
+   * @return The input vector, or null if the programs are equivalent.
+   */
+  public int[] getInput() {
+    return reference == null ? null : reference.getInput();
+  }
+
+  /**
+   * Get how the reference program ran on the first differing input.
+   * @return The reference run, or null if the programs are equivalent.
+   */
+  public GradeResult getReference() {
+    return reference;
+  }
+
+  /**
+   * Get how the candidate program ran on the first differing input.
+   * @return The candidate run, or null if the programs are equivalent.
+   */
+  public GradeResult getCandidate() {
+    return candidate;
+  }
+
+  public String toString() {
+    if (isEquivalent()) {
+      return "Equivalent over " + vectorsChecked + " input vectors";
+    }
+    StringBuilder input = new StringBuilder();
+    for (int value : getInput()) {
+      input.append(input.length() == 0 ? "" : " ").append(value);
+    }
+    return "Differs on input [" + input + "]\n  reference: " + reference
+        + "\n  candidate: " + candidate;
+  }
+}
@@ -0,0 +1,75 @@
+package computer.grading;
+
+import computer.model.HaltReason;
+import computer.model.Profiler;
+
+/**
+ * The result of running a program against a single input vector.
+ *
+ * @author tomblanchard
+ *
+ */
+public class GradeResult {
+  private final int[] input;
+  private final String output;
+  private final long cycles;
+  private final HaltReason haltReason;
+  private final Profiler profiler;
+
+  /**
+   * Constructs a GradeResult.
+   * @param input The input vector the program was given.
+   * @param output Everything the program output. Each OUT is written as a
+   *     number followed by a new line and each OTC as a single character.
+   * @param cycles The number of instructions executed.
+   * @param haltReason Why the program stopped.
+   */
+  public GradeResult(int[] input, String output, long cycles, HaltReason haltReason) {
+    this(input, output, cycles, haltReason, null);
+  }
+
+  /**
+   * Constructs a GradeResult for a profiled run.
+   * @param input The input vector the program was given.
+   * @param output Everything the program output.
+   * @param cycles The number of instructions executed.
+   * @param haltReason Why the program stopped.
+   * @param profiler The counts of what the program executed, or null if not profiled.
+   */
+  public GradeResult(int[] input, String output, long cycles, HaltReason haltReason,
+      Profiler profiler) {
+    this.input = input;
+    this.output = output;
+    this.cycles = cycles;
+    this.haltReason = haltReason;
+    this.profiler = profiler;
+  }
+
+  public int[] getInput() {
+    return input;
+  }
+
+  public String getOutput() {
+    return output;
+  }
+
+  public long getCycles() {
+    return cycles;
+  }
+
+  public HaltReason getHaltReason() {
+    return haltReason;
+  }
+
+  /**
+   * Get the counts of what the program executed.
+   * @return The profile, or null if the grader wasn't profiling.
+   */
+  public Profiler getProfiler() {
+    return profiler;
+  }
+
+  public String toString() {
+    return haltReason + " after " + cycles + " cycles, output: " + output.replace("\n", " ");
+  }
+}
@@ -0,0 +1,223 @@
+package computer.grading;
+
+import computer.instruction.Instruction;
+import computer.model.CompiledProgram;
+import computer.model.Computer;
+import computer.model.CoverageMap;
+import computer.model.LockstepComputer;
+import computer.model.Profiler;
+import computer.model.QueueInputChannel;
+import computer.model.RunResult;
+import computer.model.StreamingOutputSink;
+import java.io.StringWriter;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Grades a single assembled program against many input vectors. The runs are
+ * split up across a {@link ForkJoinPool}, each worker running its share of the
+ * input vectors together on a {@link LockstepComputer}. Profiled runs are
+ * instead loaded one at a time into the worker's own computer, fed input from
+ * a queue.
+ *
+ * <p>Coverage can be collected into a {@link CoverageReport} as the runs are
+ * graded, in lockstep or not.
+ *
+ * @author tomblanchard
+ *
+ */
+public class Grader {
+
+  // Number of input vectors below which a task stops splitting itself up.
+  private static final int VECTORS_PER_TASK = 16;
+  // Lockstep runs get cheaper per vector with more lanes, so split less finely.
+  private static final int MAX_LANES_PER_TASK = 256;
+
+  private final ArrayList<Instruction> program;
+  private final long maxCycles;
+  private final ForkJoinPool pool;
+  private boolean profiling = false;
+  private CoverageReport coverage = null;
+  private int memorySize = Computer.DEFAULT_MEMORY_SIZE;
+
+  /**
+   * Constructs a grader that uses the common fork/join pool.
+   * @param program The assembled program, see {@link computer.model.Editor#getInstructions()}.
+   * @param maxCycles The most instructions any single run may execute.
+   */
+  public Grader(ArrayList<Instruction> program, long maxCycles) {
+    this(program, maxCycles, ForkJoinPool.commonPool());
+  }
+
+  /**
+   * Constructs a grader.
+   * @param program The assembled program, see {@link computer.model.Editor#getInstructions()}.
+   * @param maxCycles The most instructions any single run may execute.
+   * @param pool The pool to run the program in.
+   */
+  public Grader(ArrayList<Instruction> program, long maxCycles, ForkJoinPool pool) {
+    this.program = program;
+    this.maxCycles = maxCycles;
+    this.pool = pool;
+  }
+
+  /**
+   * Turns profiling on or off. Each result of a profiled run includes the
+   * counts of what was executed (see {@link GradeResult#getProfiler()}), eg to
+   * find submissions that spend far too long in a loop. Profiled runs are
+   * interpreted rather than compiled so are slower.
+   * @param profiling Whether to profile the runs.
+   */
+  public void setProfiling(boolean profiling) {
+    this.profiling = profiling;
+  }
+
+  /**
+   * Sets where the coverage of every run is added up. Runs with coverage are
+   * interpreted rather than compiled, but still run in lockstep unless profiling.
+   * @param coverage The report to add to, the same size as the memory, or null
+   *     to not collect coverage.
+   */
+  public void setCoverage(CoverageReport coverage) {
+    this.coverage = coverage;
+  }
+
+  /**
+   * Sets the number of memory addresses of the computers the program is run
+   * on. Must match the size the program was assembled for.
+   * @param memorySize The number of memory addresses, see {@link Computer#Computer(int)}.
+   */
+  public void setMemorySize(int memorySize) {
+    this.memorySize = memorySize;
+  }
+
+  /**
+   * Runs the program once for each of the input vectors.
+   * @param inputs The input vectors.
+   * @return The result of each run, in the same order as inputs.
+   */
+  public List<GradeResult> grade(List<int[]> inputs) {
+    GradeResult[] results = new GradeResult[inputs.size()];
+    int perTask = VECTORS_PER_TASK;
+    if (!profiling) {
+      // As many lanes as possible while still giving every worker some
+      int maxLanes = Math.min(MAX_LANES_PER_TASK, LockstepComputer.getMaxLanes(memorySize));
+      perTask = Math.max(perTask, Math.min(maxLanes, inputs.size() / pool.getParallelism()));
+    }
+    pool.invoke(new GradeTask(inputs, results, 0, inputs.size(), perTask));
+    return Arrays.asList(results);
+  }
+
+  /**
+   * Runs the program once with a single input vector on the calling thread.
+   * @param input The input vector.
+   * @return The result of the run.
+   */
+  public GradeResult grade(int[] input) {
+    Computer computer = new Computer(memorySize);
+    StringWriter transcript = new StringWriter();
+    computer.registerInputChannel(new QueueInputChannel(input));
+    computer.registerOutputSink(new StreamingOutputSink(transcript));
+    Profiler profiler = profiling ? new Profiler(memorySize) : null;
+    computer.setProfiler(profiler);
+    CoverageMap covered = coverage != null ? new CoverageMap(memorySize) : null;
+    computer.setCoverageMap(covered);
+    computer.load(program);
+
+    RunResult result = new CompiledProgram(computer).run(maxCycles);
+    if (covered != null) {
+      coverage.add(covered);
+    }
+    return new GradeResult(input, transcript.toString(),
+        result.getCycles(), result.getHaltReason(), profiler);
+  }
+
+  /**
+   * Grades the input vectors between start and end, splitting in half
+   * until the range is small enough to run directly.
+   */
+  @SuppressWarnings("serial")
+  private class GradeTask extends RecursiveAction {
+    private final List<int[]> inputs;
+    private final GradeResult[] results;
+    private final int start;
+    private final int end;
+    private final int perTask;
+
+    GradeTask(List<int[]> inputs, GradeResult[] results, int start, int end, int perTask) {
+      this.inputs = inputs;
+      this.results = results;
+      this.start = start;
+      this.end = end;
+      this.perTask = perTask;
+    }
+
+    @Override
+    protected void compute() {
+      if (end - start <= perTask) {
+        if (profiling) {
+          gradeRange();
+        } else {
+          gradeLockstep();
+        }
+      } else {
+        int middle = (start + end) >>> 1;
+        invokeAll(new GradeTask(inputs, results, start, middle, perTask),
+            new GradeTask(inputs, results, middle, end, perTask));
+      }
+    }
+
+    private void gradeLockstep() {
+      LockstepComputer computer = new LockstepComputer(program, memorySize);
+      computer.setCoverage(coverage != null);
+      CoverageMap covered = coverage != null ? new CoverageMap(memorySize) : null;
+
+      // Big memories allow fewer lanes than a task may have
+      int maxLanes = LockstepComputer.getMaxLanes(memorySize);
+      for (int from = start; from < end; from += maxLanes) {
+        List<int[]> range = inputs.subList(from, Math.min(end, from + maxLanes));
+        computer.run(range, maxCycles);
+        for (int lane = 0; lane < range.size(); lane++) {
+          if (covered != null) {
+            computer.getCoverage(lane, covered);
+            coverage.add(covered);
+          }
+          results[from + lane] = new GradeResult(range.get(lane), computer.getOutput(lane),
+              computer.getCycles(lane), computer.getHaltReason(lane), null);
+        }
+      }
+    }
+
+    private void gradeRange() {
+      Computer computer = new Computer(memorySize);
+      QueueInputChannel channel = new QueueInputChannel();
+      StringWriter transcript = new StringWriter();
+      computer.registerInputChannel(channel);
+      computer.registerOutputSink(new StreamingOutputSink(transcript));
+      CoverageMap covered = coverage != null ? new CoverageMap(memorySize) : null;
+      computer.setCoverageMap(covered);
+
+      // Reloading the same program leaves the compiled code valid
+      computer.load(program);
+      CompiledProgram engine = new CompiledProgram(computer);
+
+      for (int i = start; i < end; i++) {
+        Profiler profiler = profiling ? new Profiler(memorySize) : null;
+        computer.setProfiler(profiler);
+        computer.load(program);
+        transcript.getBuffer().setLength(0);
+        channel.setInput(inputs.get(i));
+
+        RunResult result = engine.run(maxCycles);
+        if (covered != null) {
+          coverage.add(covered);
+        }
+        results[i] = new GradeResult(inputs.get(i), transcript.toString(),
+            result.getCycles(), result.getHaltReason(), profiler);
+      }
+    }
+  }
+}
@@ -71,6 +71,22 @@ public class AddressedInstruction extends Instruction {
     }
     return super.toOpCode() + targetAddress;
   }
+
+  /**
+   * Returns the associated opcode for a computer with a different number of
+   * memory addresses, see {@link Instruction#toOpCode(int)}.
+   * 
+   * @throws IllegalStateException If the target address has not been resolved into
+   *     a numeric address.
+   */
+  @Override
+  public int toOpCode(int memorySize) {
+    if (!addressResolved) {
+      throw new IllegalStateException("Address of instruction "
+         + this.toString() + " not resolved");
+    }
+    return super.toOpCode(memorySize) + targetAddress;
+  }
   
   @Override
   public boolean isResolved() {
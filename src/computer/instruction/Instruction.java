@@ -37,6 +37,18 @@ public class Instruction implements Comparable<Instruction> {
   public int toOpCode() {
     return mnemonic.getOpCode();
   }
+
+  /**
+   * Returns the numeric opcode for a computer with a different number of
+   * memory addresses. The instruction digit is followed by as many address
+   * digits as the memory needs, eg STA 55 is 3055 with 1000 addresses.
+   * @param memorySize The number of memory addresses, a power of 10.
+   * @return The opcode.
+   */
+  public int toOpCode(int memorySize) {
+    int opCode = mnemonic.getOpCode();
+    return opCode / 100 * memorySize + opCode % 100;
+  }
   
   /**
    * Gets this instructions mnemonic.
@@ -1,6 +1,6 @@
 package computer.instruction;
 
-import language.Messages;
+import computer.CoreMessages;
 
 /**
  * Mnemonic enum that provides the text and numeric representation of the 
@@ -40,17 +40,29 @@ public enum Mnemonic {
    * @return the name of the opcode
    */
   public static String instructionName(int opCode) {
+    return instructionName(opCode, 100);
+  }
+
+  /**
+   * Returns the name of the instruction opCode for a computer with memorySize
+   * addresses, see {@link Instruction#toOpCode(int)}.
+   * 
+   * @param opCode the opcode
+   * @param memorySize the number of memory addresses
+   * @return the name of the opcode
+   */
+  public static String instructionName(int opCode, int memorySize) {
     String s;
-    if (opCode == 901) {
+    if (opCode == 9 * memorySize + 1) {
       s = "INP";
-    } else if (opCode == 902) {
+    } else if (opCode == 9 * memorySize + 2) {
       s = "OUT";
-    } else if (opCode == 922) {
+    } else if (opCode == 9 * memorySize + 22) {
       s = "OTC";
     } else if (opCode == 0) {
       s = "HLT";
     } else {
-      int instruction = opCode / 100;
+      int instruction = opCode / memorySize;
 
       switch (instruction) {
         case 1:
@@ -89,45 +101,62 @@ public enum Mnemonic {
    * @return the explanation of what this opcode does
    */
   public static String explanation(int opCode) {
+    return explanation(opCode, 100);
+  }
+
+  /**
+   * Returns an explanation of what opCode is actually doing for a computer
+   * with memorySize addresses. These strings will be localised.
+   * 
+   * @param opCode the opcode
+   * @param memorySize the number of memory addresses
+   * @return the explanation of what this opcode does
+   */
+  public static String explanation(int opCode, int memorySize) {
     String s;
 
-    if (opCode == 901) {
-      s = Messages.getTranslatedString("READ_INPUT");
-    } else if (opCode == 902) {
-      s = Messages.getTranslatedString("WRITE_ACCUMULATOR");
-    } else if (opCode == 922) {
-      s = Messages.getTranslatedString("WRITE_ACCUMULATOR_AS_CHAR");
+    if (opCode == 9 * memorySize + 1) {
+      s = CoreMessages.getTranslatedString("READ_INPUT");
+    } else if (opCode == 9 * memorySize + 2) {
+      s = CoreMessages.getTranslatedString("WRITE_ACCUMULATOR");
+    } else if (opCode == 9 * memorySize + 22) {
+      s = CoreMessages.getTranslatedString("WRITE_ACCUMULATOR_AS_CHAR");
     } else if (opCode == 0) {
-      s = Messages.getTranslatedString("HALT_COMPUTER");
+      s = CoreMessages.getTranslatedString("HALT_COMPUTER");
     } else {
-      int instruction = opCode / 100;
-      int address = opCode % 100;
+      int instruction = opCode / memorySize;
+      int address = opCode % memorySize;
 
       switch (instruction) {
         case 1:
           //TODO: REally it shouldn't be up to the called to request a token is inserted...
-          s = Messages.insertToken(Messages.getTranslatedString("ADD_MEM_ADDRESS"), "" + address);
+          s = CoreMessages.insertToken(
+              CoreMessages.getTranslatedString("ADD_MEM_ADDRESS"), "" + address);
           break;
         case 2:
-          s = Messages.insertToken(Messages.getTranslatedString("SUB_MEM_ADDRESS"), "" + address);
+          s = CoreMessages.insertToken(
+              CoreMessages.getTranslatedString("SUB_MEM_ADDRESS"), "" + address);
           break;
         case 3:
-          s = Messages.insertToken(Messages.getTranslatedString("STORE_IN_ADDRESS"), "" + address);;
+          s = CoreMessages.insertToken(
+              CoreMessages.getTranslatedString("STORE_IN_ADDRESS"), "" + address);;
           break;
         case 5:
-          s = Messages.insertToken(Messages.getTranslatedString("LOAD_MEM_ADDRESS"), "" + address);
+          s = CoreMessages.insertToken(
+              CoreMessages.getTranslatedString("LOAD_MEM_ADDRESS"), "" + address);
           break;
         case 6:
-          s = Messages.insertToken(Messages.getTranslatedString("SET_PC"), "" + address);
+          s = CoreMessages.insertToken(CoreMessages.getTranslatedString("SET_PC"), "" + address);
           break;
         case 7:
-          s = Messages.insertToken(Messages.getTranslatedString("IF_ZERO"), "" + address);
+          s = CoreMessages.insertToken(CoreMessages.getTranslatedString("IF_ZERO"), "" + address);
           break;
         case 8:
-          s = Messages.insertToken(Messages.getTranslatedString("IF_POSITIVE"), "" + address);
+          s = CoreMessages.insertToken(
+              CoreMessages.getTranslatedString("IF_POSITIVE"), "" + address);
           break;
         default:
-          s = Messages.insertToken(Messages.getTranslatedString("CONFUSED"), "" + address);
+          s = CoreMessages.insertToken(CoreMessages.getTranslatedString("CONFUSED"), "" + address);
       }
     }
 
@@ -0,0 +1,204 @@
+package computer.metrics;
+
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+/**
+ * Live operational numbers for the computers running in this JVM and the UI
+ * drawing them. Every counter is a {@link LongAdder} so the many threads that
+ * may be running computers (eg when grading) don't contend with each other,
+ * and reading the counters never holds up the threads updating them.
+ *
+ * <p>Computers report to {@link #getGlobal()} unless told otherwise, which can
+ * be published over JMX with {@link #registerMBean()} or read directly with
+ * {@link #snapshot()}.
+ *
+ * @author tomblanchard
+ *
+ */
+public final class Metrics implements MetricsMBean {
+  private static final Metrics GLOBAL = new Metrics();
+
+  // The instruction rate is measured over windows of at least this long.
+  private static final long RATE_WINDOW_NANOS = 1000000000L;
+
+  private final LongAdder instructions = new LongAdder();
+  private final LongAdder halts = new LongAdder();
+  private final LongAdder invalidInstructions = new LongAdder();
+  private final LongAdder inputReads = new LongAdder();
+  private final LongAdder inputWaitNanos = new LongAdder();
+  private final LongAdder paints = new LongAdder();
+  private final LongAdder paintNanos = new LongAdder();
+  private final LongAccumulator maxPaintNanos = new LongAccumulator(Math::max, 0);
+
+  // The instruction count at the start of the current rate window and the
+  // rate measured over the last complete window.
+  private final AtomicReference<RateSample> rate =
+      new AtomicReference<>(new RateSample(System.nanoTime(), 0, 0));
+
+  /**
+   * A point the instruction rate is measured from.
+   */
+  private static final class RateSample {
+    final long time;
+    final long instructions;
+    final double perSecond;
+
+    RateSample(long time, long instructions, double perSecond) {
+      this.time = time;
+      this.instructions = instructions;
+      this.perSecond = perSecond;
+    }
+  }
+
+  /**
+   * Get the metrics that computers report to by default.
+   * @return The JVM wide metrics.
+   */
+  public static Metrics getGlobal() {
+    return GLOBAL;
+  }
+
+  /**
+   * Publishes these metrics over JMX as jlmc:type=Metrics. Failure is not
+   * fatal, the metrics can still be read directly.
+   * @return false if the MBean couldn't be registered.
+   */
+  public boolean registerMBean() {
+    try {
+      MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+      ObjectName name = new ObjectName("jlmc:type=Metrics");
+      if (!server.isRegistered(name)) {
+        server.registerMBean(this, name);
+      }
+      return true;
+    } catch (JMException e) {
+      System.err.println("Couldn't register metrics MBean: " + e.getMessage());
+      return false;
+    }
+  }
+
+  public void instructionsExecuted(long count) {
+    instructions.add(count);
+  }
+
+  public void halted() {
+    halts.increment();
+  }
+
+  public void invalidInstruction() {
+    invalidInstructions.increment();
+  }
+
+  /**
+   * Records waiting for a single input.
+   * @param nanos How long was spent waiting.
+   */
+  public void inputWaited(long nanos) {
+    inputReads.increment();
+    inputWaitNanos.add(nanos);
+  }
+
+  /**
+   * Records drawing the computer.
+   * @param nanos How long the paint took.
+   */
+  public void painted(long nanos) {
+    paints.increment();
+    paintNanos.add(nanos);
+    maxPaintNanos.accumulate(nanos);
+  }
+
+  @Override
+  public long getInstructionsExecuted() {
+    return instructions.sum();
+  }
+
+  /**
+   * Get the rate instructions have been executed at recently. The rate is
+   * measured over the last complete window of a second or more in which the
+   * metrics were read.
+   */
+  @Override
+  public double getInstructionsPerSecond() {
+    long now = System.nanoTime();
+    RateSample last = rate.get();
+    long elapsed = now - last.time;
+    if (elapsed < RATE_WINDOW_NANOS) {
+      return last.perSecond;
+    }
+    long count = instructions.sum();
+    double perSecond = (count - last.instructions) * 1e9 / elapsed;
+    // Another reader may have started a new window first, either answer is fine
+    rate.compareAndSet(last, new RateSample(now, count, perSecond));
+    return perSecond;
+  }
+
+  @Override
+  public long getHalts() {
+    return halts.sum();
+  }
+
+  @Override
+  public long getInvalidInstructions() {
+    return invalidInstructions.sum();
+  }
+
+  @Override
+  public long getInputReads() {
+    return inputReads.sum();
+  }
+
+  @Override
+  public double getInputWaitMillis() {
+    return inputWaitNanos.sum() / 1e6;
+  }
+
+  @Override
+  public long getPaints() {
+    return paints.sum();
+  }
+
+  @Override
+  public double getAveragePaintMillis() {
+    long count = paints.sum();
+    return count == 0 ? 0 : paintNanos.sum() / 1e6 / count;
+  }
+
+  @Override
+  public double getMaxPaintMillis() {
+    return maxPaintNanos.get() / 1e6;
+  }
+
+  /**
+   * Reads every metric. The counters are read one after another while they may
+   * still be changing, so they are not exactly consistent with each other.
+   * @return The current values.
+   */
+  public MetricsSnapshot snapshot() {
+    return new MetricsSnapshot(instructions.sum(), getInstructionsPerSecond(), halts.sum(),
+        invalidInstructions.sum(), inputReads.sum(), inputWaitNanos.sum(), paints.sum(),
+        paintNanos.sum(), maxPaintNanos.get());
+  }
+
+  /**
+   * Sets every counter back to 0.
+   */
+  @Override
+  public void reset() {
+    instructions.reset();
+    halts.reset();
+    invalidInstructions.reset();
+    inputReads.reset();
+    inputWaitNanos.reset();
+    paints.reset();
+    paintNanos.reset();
+    maxPaintNanos.reset();
+    rate.set(new RateSample(System.nanoTime(), 0, 0));
+  }
+}
@@ -0,0 +1,30 @@
+package computer.metrics;
+
+/**
+ * The management interface of {@link Metrics}, as seen through JMX (eg in
+ * JConsole or VisualVM under jlmc:type=Metrics).
+ *
+ * @author tomblanchard
+ *
+ */
+public interface MetricsMBean {
+  long getInstructionsExecuted();
+
+  double getInstructionsPerSecond();
+
+  long getHalts();
+
+  long getInvalidInstructions();
+
+  long getInputReads();
+
+  double getInputWaitMillis();
+
+  long getPaints();
+
+  double getAveragePaintMillis();
+
+  double getMaxPaintMillis();
+
+  void reset();
+}
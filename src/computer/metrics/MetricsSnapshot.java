@@ -0,0 +1,81 @@
+package computer.metrics;
+
+/**
+ * The values of all of the {@link Metrics} at one point in time.
+ *
+ * @author tomblanchard
+ *
+ */
+public final class MetricsSnapshot {
+  private final long instructionsExecuted;
+  private final double instructionsPerSecond;
+  private final long halts;
+  private final long invalidInstructions;
+  private final long inputReads;
+  private final long inputWaitNanos;
+  private final long paints;
+  private final long paintNanos;
+  private final long maxPaintNanos;
+
+  MetricsSnapshot(long instructionsExecuted, double instructionsPerSecond, long halts,
+      long invalidInstructions, long inputReads, long inputWaitNanos, long paints,
+      long paintNanos, long maxPaintNanos) {
+    this.instructionsExecuted = instructionsExecuted;
+    this.instructionsPerSecond = instructionsPerSecond;
+    this.halts = halts;
+    this.invalidInstructions = invalidInstructions;
+    this.inputReads = inputReads;
+    this.inputWaitNanos = inputWaitNanos;
+    this.paints = paints;
+    this.paintNanos = paintNanos;
+    this.maxPaintNanos = maxPaintNanos;
+  }
+
+  public long getInstructionsExecuted() {
+    return instructionsExecuted;
+  }
+
+  public double getInstructionsPerSecond() {
+    return instructionsPerSecond;
+  }
+
+  public long getHalts() {
+    return halts;
+  }
+
+  public long getInvalidInstructions() {
+    return invalidInstructions;
+  }
+
+  public long getInputReads() {
+    return inputReads;
+  }
+
+  /**
+   * Get the total time spent waiting for input, either blocked reading an
+   * input channel or suspended until input was supplied.
+   * @return The time in nanoseconds.
+   */
+  public long getInputWaitNanos() {
+    return inputWaitNanos;
+  }
+
+  public long getPaints() {
+    return paints;
+  }
+
+  public long getPaintNanos() {
+    return paintNanos;
+  }
+
+  public long getMaxPaintNanos() {
+    return maxPaintNanos;
+  }
+
+  public String toString() {
+    return instructionsExecuted + " instructions (" + Math.round(instructionsPerSecond)
+        + "/s), " + halts + " halts, " + invalidInstructions + " invalid, "
+        + inputReads + " inputs (" + inputWaitNanos / 1000000 + "ms waiting), "
+        + paints + " paints (" + paintNanos / 1000000 + "ms)";
+  }
+}
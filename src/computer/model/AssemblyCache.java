@@ -0,0 +1,143 @@
+package computer.model;
+
+import computer.ParseException;
+import computer.instruction.Instruction;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Remembers assembled programs so that sources that have been assembled
+ * before, even with different comments or whitespace, aren't parsed again.
+ * Programs are looked up by a SHA-256 hash of their normalised source (see
+ * {@link Editor#normalise(String)}) and the memory size. Only programs that
+ * assemble are kept, and once the cache is full the least recently used
+ * program is dropped. Safe to share between threads.
+ *
+ * @author tomblanchard
+ *
+ */
+public final class AssemblyCache {
+  /**
+   * The number of programs kept by default.
+   */
+  public static final int DEFAULT_CAPACITY = 1024;
+
+  private final Map<String, ArrayList<Instruction>> programs;
+  private long hits = 0;
+  private long misses = 0;
+
+  /**
+   * Constructs a cache of up to {@link #DEFAULT_CAPACITY} programs.
+   */
+  public AssemblyCache() {
+    this(DEFAULT_CAPACITY);
+  }
+
+  /**
+   * Constructs a cache.
+   * @param capacity The most programs to keep.
+   */
+  @SuppressWarnings("serial")
+  public AssemblyCache(int capacity) {
+    if (capacity < 1) {
+      throw new IllegalArgumentException("Invalid capacity " + capacity);
+    }
+    // Access order so the eldest entry is the least recently used
+    programs = new LinkedHashMap<String, ArrayList<Instruction>>(16, 0.75f, true) {
+      @Override
+      protected boolean removeEldestEntry(Map.Entry<String, ArrayList<Instruction>> eldest) {
+        return size() > capacity;
+      }
+    };
+  }
+
+  /**
+   * Assembles a program for the default 100 memory addresses.
+   * @param source The source text.
+   * @return The assembled program, see {@link Editor#getInstructions()}.
+   * @throws ParseException If the program doesn't assemble.
+   */
+  public ArrayList<Instruction> assemble(String source) throws ParseException {
+    return assemble(source, Computer.DEFAULT_MEMORY_SIZE);
+  }
+
+  /**
+   * Assembles a program, or finds it if it has been assembled before. The
+   * instructions are shared with other callers and must not be changed, but
+   * the list itself is a copy.
+   * @param source The source text.
+   * @param memorySize The number of memory addresses, see {@link Editor#Editor(int)}.
+   * @return The assembled program, see {@link Editor#getInstructions()}.
+   * @throws ParseException If the program doesn't assemble.
+   */
+  public ArrayList<Instruction> assemble(String source, int memorySize) throws ParseException {
+    String key = hash(memorySize + "\n" + Editor.normalise(source));
+    ArrayList<Instruction> program;
+    synchronized (this) {
+      program = programs.get(key);
+      if (program != null) {
+        hits++;
+      } else {
+        misses++;
+      }
+    }
+    if (program == null) {
+      // Assemble outside the lock, at worst the same program is assembled twice
+      Editor editor = new Editor(memorySize);
+      editor.setText(source);
+      editor.parse();
+      program = editor.getInstructions();
+      synchronized (this) {
+        programs.put(key, program);
+      }
+    }
+    return new ArrayList<Instruction>(program);
+  }
+
+  /**
+   * Forgets every program.
+   */
+  public synchronized void clear() {
+    programs.clear();
+  }
+
+  public synchronized int size() {
+    return programs.size();
+  }
+
+  /**
+   * Get the number of programs found in the cache.
+   * @return The number of calls to assemble that didn't parse.
+   */
+  public synchronized long getHits() {
+    return hits;
+  }
+
+  /**
+   * Get the number of programs that had to be assembled, including those
+   * that failed to.
+   * @return The number of calls to assemble that parsed.
+   */
+  public synchronized long getMisses() {
+    return misses;
+  }
+
+  private static String hash(String text) {
+    MessageDigest digest;
+    try {
+      digest = MessageDigest.getInstance("SHA-256");
+    } catch (NoSuchAlgorithmException e) {
+      // Every Java platform has SHA-256
+      throw new IllegalStateException(e);
+    }
+    StringBuilder hex = new StringBuilder();
+    for (byte b : digest.digest(text.getBytes(StandardCharsets.UTF_8))) {
+      hex.append(Character.forDigit((b >> 4) & 0xf, 16)).append(Character.forDigit(b & 0xf, 16));
+    }
+    return hex.toString();
+  }
+}
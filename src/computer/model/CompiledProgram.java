@@ -0,0 +1,403 @@
+package computer.model;
+
+import computer.metrics.Metrics;
+
+/**
+ * A compiled form of the program loaded into a {@link Computer}. The memory
+ * image is split into basic blocks, one starting at every branch target and
+ * after every conditional branch, and each instruction in a block is turned
+ * into a small pre-bound operation so that running the program no longer has
+ * to fetch or decode anything.
+ *
+ * <p>Compilation is only possible while the code is constant. If the program
+ * stores into any address that it might execute it is left uncompiled and
+ * {@link #run(long)} falls back to the interpreter in {@link Computer}. The
+ * interpreter is also used for anything the compiled tier does not handle
+ * itself (halting, invalid instructions and budgets that end part way through
+ * a block) so the results are always the same as {@link Computer#run(long)}.
+ * Runs with loop detection turned on, a trace being recorded, an undo history,
+ * a profiler, a coverage map or any breakpoints are always interpreted.
+ *
+ * <p>The program must be recompiled if a new program is loaded into the computer.
+ *
+ * @author tomblanchard
+ *
+ */
+public class CompiledProgram implements ExecutionEngine {
+
+  /**
+   * A single pre-bound instruction within a block.
+   */
+  private interface Operation {
+    /**
+     * Executes the operation.
+     * @return false if the operation needed input but none was available.
+     */
+    boolean execute();
+  }
+
+  /**
+   * A straight run of operations with a single way in and (up to) two
+   * ways out.
+   */
+  private static final class Block {
+    // Address of the first instruction in the block
+    private int start;
+    // Body of the block, ends before any branch
+    private Operation[] operations;
+    // Opcode of the branch at the end of the block, or -1 if the block falls
+    // through into the next one.
+    private int branchOpcode = -1;
+    private int branchTarget;
+    // Address execution continues from if the branch is not taken
+    private int next;
+    // Number of instructions in the block, including any branch
+    private int length;
+  }
+
+  private final Computer computer;
+  private final int[] memory;
+  private final int memorySize;
+  private final boolean compiled;
+
+  // A block for every address that can be executed, entering part way
+  // through a block is allowed. null where the interpreter must take over.
+  private final Block[] blocks;
+
+  // Registers used while the compiled code is running.
+  private int accumulator;
+  private int input;
+
+  /**
+   * Compiles the program currently loaded into computer.
+   *
+   * @param computer The computer (with a program loaded) to compile.
+   */
+  public CompiledProgram(Computer computer) {
+    this.computer = computer;
+    this.memory = computer.getMemoryImage();
+    this.memorySize = memory.length;
+    this.blocks = new Block[memorySize];
+
+    boolean[] reachable = findReachable(memory);
+    this.compiled = !writesToCode(memory, reachable);
+    if (compiled) {
+      buildBlocks(reachable);
+    }
+  }
+
+  /**
+   * Whether the program could be compiled.
+   * @return true if the program was compiled, false if runs will be interpreted.
+   */
+  public boolean isCompiled() {
+    return compiled;
+  }
+
+  /**
+   * Finds every address that execution can reach by following the
+   * instructions from address 0.
+   *
+   * @param memory The memory image holding the program.
+   * @return For each address, whether it might be executed.
+   */
+  static boolean[] findReachable(int[] memory) {
+    int memorySize = memory.length;
+    boolean[] reachable = new boolean[memorySize];
+    int[] pending = new int[memorySize * 2];
+    int count = 0;
+    pending[count++] = 0;
+
+    while (count > 0) {
+      int address = pending[--count];
+      if (address < 0 || address >= memorySize || reachable[address]) {
+        continue;
+      }
+      reachable[address] = true;
+
+      int opcode = memory[address] / memorySize;
+      int operand = memory[address] % memorySize;
+      switch (opcode) {
+        case 1:
+        case 2:
+        case 3:
+        case 5:
+        case 9:
+          pending[count++] = address + 1;
+          break;
+        case 6:
+          pending[count++] = operand;
+          break;
+        case 7:
+        case 8:
+          pending[count++] = operand;
+          pending[count++] = address + 1;
+          break;
+        // Halt and invalid opcodes end execution
+        default:
+          break;
+      }
+    }
+    return reachable;
+  }
+
+  /**
+   * Checks whether any reachable store instruction writes to an address
+   * that might be executed.
+   *
+   * @param memory The memory image holding the program.
+   * @param reachable The reachable addresses.
+   * @return true if the program (might) modify itself.
+   */
+  static boolean writesToCode(int[] memory, boolean[] reachable) {
+    int memorySize = memory.length;
+    for (int address = 0; address < memorySize; address++) {
+      if (reachable[address] && memory[address] / memorySize == 3) {
+        int target = memory[address] % memorySize;
+        if (target >= 0 && reachable[target]) {
+          return true;
+        }
+      }
+    }
+    return false;
+  }
+
+  /**
+   * Whether the instruction at address can be turned into an operation.
+   * Halts and invalid opcodes are left for the interpreter.
+   */
+  private boolean isCompilable(int address, boolean[] reachable) {
+    if (address >= memorySize || !reachable[address]) {
+      return false;
+    }
+    switch (memory[address] / memorySize) {
+      case 1:
+      case 2:
+      case 3:
+      case 5:
+      case 6:
+      case 7:
+      case 8:
+      case 9:
+        return true;
+      default:
+        return false;
+    }
+  }
+
+  /**
+   * Splits the reachable code into basic blocks.
+   *
+   * @param reachable The reachable addresses.
+   */
+  private void buildBlocks(boolean[] reachable) {
+
+    // Work out where each block starts
+    boolean[] leaders = new boolean[memorySize];
+    leaders[0] = true;
+    for (int address = 0; address < memorySize; address++) {
+      if (!reachable[address]) {
+        continue;
+      }
+      int opcode = memory[address] / memorySize;
+      int operand = memory[address] % memorySize;
+      if (opcode >= 6 && opcode <= 8) {
+        leaders[operand] = true;
+        if (address + 1 < memorySize) {
+          leaders[address + 1] = true;
+        }
+      }
+    }
+
+    int address = 0;
+    while (address < memorySize) {
+      if (!leaders[address] || !isCompilable(address, reachable)) {
+        address++;
+        continue;
+      }
+
+      Block block = new Block();
+      block.start = address;
+
+      // Collect the body up to the next branch, leader or uncompilable address
+      int end = address;
+      while (isCompilable(end, reachable)
+          && (end == address || !leaders[end])
+          && !isBranch(memory[end] / memorySize)) {
+        end++;
+      }
+      block.operations = new Operation[end - address];
+      for (int i = address; i < end; i++) {
+        block.operations[i - address] = compile(memory[i] / memorySize, memory[i] % memorySize);
+      }
+
+      block.next = end;
+      block.length = end - address;
+      if (isCompilable(end, reachable) && isBranch(memory[end] / memorySize)
+          && (end == address || !leaders[end])) {
+        block.branchOpcode = memory[end] / memorySize;
+        block.branchTarget = memory[end] % memorySize;
+        block.next = end + 1;
+        block.length++;
+        end++;
+      }
+
+      // Any address within the block can be used as an entry point
+      for (int i = block.start; i < end; i++) {
+        blocks[i] = block;
+      }
+      address = end;
+    }
+  }
+
+  private static boolean isBranch(int opcode) {
+    return opcode >= 6 && opcode <= 8;
+  }
+
+  /**
+   * Turns a single non branching instruction into an operation.
+   *
+   * @param opcode The opcode of the instruction.
+   * @param operand The address (or i/o selector) of the instruction.
+   * @return The bound operation.
+   */
+  private Operation compile(int opcode, final int operand) {
+    switch (opcode) {
+      case 1:
+        return () -> {
+          accumulator += memory[operand];
+          return true;
+        };
+      case 2:
+        return () -> {
+          accumulator -= memory[operand];
+          return true;
+        };
+      case 3:
+        return () -> {
+          computer.store(operand, accumulator);
+          return true;
+        };
+      case 5:
+        return () -> {
+          accumulator = memory[operand];
+          return true;
+        };
+      default:
+        if (operand == 2) {
+          return () -> {
+            computer.addToOutput(accumulator, false);
+            return true;
+          };
+        } else if (operand == 22) {
+          return () -> {
+            computer.addToOutput(accumulator, true);
+            return true;
+          };
+        } else if (operand == 1) {
+          return () -> {
+            if (computer.getInputChannel() == null) {
+              computer.awaitInput();
+              return false;
+            }
+            Integer ip = computer.readInput();
+            if (ip == null) {
+              return false;
+            }
+            input = ip;
+            accumulator = input;
+            return true;
+          };
+        }
+        // Any other i/o address does nothing
+        return () -> true;
+    }
+  }
+
+  /**
+   * Runs the program until it halts or maxCycles instructions have been
+   * executed. Falls back to {@link Computer#run(long)} whenever the compiled
+   * code can't be used.
+   *
+   * @param maxCycles The maximum number of instructions to execute.
+   * @return The reason the run stopped along with the number of instructions
+   *     executed and the final accumulator and output.
+   */
+  @Override
+  public RunResult run(long maxCycles) {
+    if (!compiled || computer.isFetch() || computer.isAwaitingInput()
+        || computer.isLoopDetection() || computer.getTraceRecorder() != null
+        || computer.getUndoHistory() > 0 || computer.hasBreakpoints()
+        || computer.getProfiler() != null || computer.getCoverageMap() != null) {
+      return computer.run(maxCycles);
+    }
+
+    accumulator = computer.getAccumulator();
+    input = computer.getInput();
+    int programCounter = computer.getProgramCounter();
+    int lastAddress = -1;
+    long cycles = 0;
+
+    while (programCounter < memorySize) {
+      Block block = blocks[programCounter];
+      if (block == null) {
+        break;
+      }
+      int offset = programCounter - block.start;
+      if (maxCycles - cycles < block.length - offset) {
+        break;
+      }
+
+      Operation[] operations = block.operations;
+      for (int i = offset; i < operations.length; i++) {
+        if (!operations[i].execute()) {
+          // Out of input, stop just after the input instruction
+          cycles += i - offset + 1;
+          recordInstructions(cycles);
+          computer.restoreState(accumulator, input, block.start + i + 1, block.start + i);
+          HaltReason reason = computer.isAwaitingInput()
+              ? HaltReason.NEEDS_INPUT : HaltReason.NO_INPUT;
+          return new RunResult(reason, cycles, accumulator, computer.getOutput());
+        }
+      }
+      cycles += block.length - offset;
+      lastAddress = block.start + block.length - 1;
+
+      switch (block.branchOpcode) {
+        case 6:
+          programCounter = block.branchTarget;
+          break;
+        case 7:
+          programCounter = accumulator == 0 ? block.branchTarget : block.next;
+          break;
+        case 8:
+          programCounter = accumulator >= 0 ? block.branchTarget : block.next;
+          break;
+        default:
+          programCounter = block.next;
+      }
+    }
+
+    recordInstructions(cycles);
+    computer.restoreState(accumulator, input, programCounter, lastAddress);
+
+    // Let the interpreter deal with halting, invalid instructions and whatever
+    // is left of the budget.
+    if (cycles < maxCycles) {
+      RunResult rest = computer.run(maxCycles - cycles);
+      return new RunResult(rest.getHaltReason(), cycles + rest.getCycles(),
+          rest.getAccumulator(), rest.getOutput());
+    }
+    return new RunResult(HaltReason.CYCLE_LIMIT, cycles, accumulator, computer.getOutput());
+  }
+
+  /**
+   * Reports the instructions run by the compiled code, the interpreter reports its own.
+   */
+  private void recordInstructions(long cycles) {
+    Metrics metrics = computer.getMetrics();
+    if (metrics != null) {
+      metrics.instructionsExecuted(cycles);
+    }
+  }
+}
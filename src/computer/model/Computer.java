@@ -3,21 +3,35 @@ package computer.model;
 
 import computer.instruction.AddressedInstruction;
 import computer.instruction.Instruction;
-import java.beans.PropertyChangeListener;
-import java.beans.PropertyChangeSupport;
+import computer.metrics.Metrics;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
 
 /**
  * The model of the LMC computer. Very simple, has 100 memory locations,
  * an input register, an output register, an accumulator, a program counter,
  * an instruction register and an address register.
  * 
+ * <p>Larger computers can be made for bigger programs, eg with 1000 memory
+ * locations. Instructions then have as many address digits as are needed,
+ * so STA 55 becomes 3055 rather than 355.
+ * 
  * @author Tom Blanchard
  *
  */
-public class Computer {
-  public static final int memorySize = 100;
-  private int maxAddress = memorySize - 1;
+public class Computer implements ExecutionEngine {
+  public static final int DEFAULT_MEMORY_SIZE = 100;
+  // Largest memory allowed, the opcode must still fit in an int.
+  public static final int MAX_MEMORY_SIZE = 1000000;
+
+  /**
+   * The number of memory locations of a default computer.
+   * @deprecated Use {@link #DEFAULT_MEMORY_SIZE} or {@link #getMemorySize()}.
+   */
+  @Deprecated
+  public static final int memorySize = DEFAULT_MEMORY_SIZE;
+  private int maxAddress;
 
   private final int outputSize = 5;
 
@@ -27,9 +41,16 @@ public class Computer {
   // Is the computer currently halted.
   private boolean halted = true;
 
+  // Is the computer waiting for input to be supplied (only when there is no input channel).
+  private boolean awaitingInput = false;
+
+  // Optional detection of programs stuck in an endless loop.
+  private LoopDetector loopDetector;
+  private boolean loopDetected = false;
+
   // internal register of our very simple CPU.
   private int input = 0;
-  private String[] output = new String[outputSize];
+  private OutputRingBuffer output = new OutputRingBuffer(outputSize);
   private int accumulator = 0;
   private int programCounter = 0;
   private int instructionRegister = 0;
@@ -37,28 +58,121 @@ public class Computer {
 
 
   // Computers 'memory'.
-  private int[] memory = new int[memorySize];
+  private final int[] memory;
+
+  // Pre-decoded form of memory so that fetch doesn't have to divide every time.
+  // Kept in step with memory by load, reset and the store opcode.
+  private final int[] opcodes;
+  private final int[] operands;
 
-  //Min/max CPU speed
-  public static final int MAX_CPU_SPEED = 20;
+  //Min/max CPU speed, in fetch or execute steps per second
+  public static final int MAX_CPU_SPEED = 1024;
   public static final int MIN_CPU_SPEED = 1;
-  private int cpuSpeed = MIN_CPU_SPEED;
+  //Run as fast as possible
+  public static final int UNTHROTTLED_CPU_SPEED = Integer.MAX_VALUE;
+  private volatile int cpuSpeed = MIN_CPU_SPEED;
 
   
+  // Optional extra destination for everything the computer outputs, the output
+  // register only keeps the last few values.
+  private OutputSink outputSink;
+
+  // Breakpoints on addresses and watchpoints on memory, one bit per address.
+  // Only checked by run, stepping is never stopped.
+  private final long[] breakpoints;
+  private final long[] watchpoints;
+  private boolean watchpointHit = false;
+  // Address of the breakpoint the last run stopped at, so the next run can
+  // carry on past it. Cleared by the next fetch.
+  private int breakpointStop = -1;
+
+  // Optional history of recent instructions so that they can be undone.
+  private UndoJournal undoJournal;
+
+  // Where throughput, halts and input waits are reported, null for nowhere.
+  private Metrics metrics = Metrics.getGlobal();
+  // When the computer started waiting for input to be supplied.
+  private long awaitingSince;
+
+  // Optional counts of the instructions executed.
+  private Profiler profiler;
+
+  // Optional record of which instructions and branches have been run.
+  private CoverageMap coverageMap;
+
+  // Optional record of every instruction executed.
+  private TraceRecorder traceRecorder;
+
   // Mechanism by which we can get user input.
   // Anything can register, as long as it can prompt the user for input.
   private InputChannel inputChannel;
 
-  // Observer pattern for keeping GUI up to date.
-  private PropertyChangeSupport pcs = new PropertyChangeSupport(this);
+  // Observer pattern for keeping GUI up to date. Replaced rather than changed
+  // so notifying doesn't need a lock or allocate.
+  private volatile ComputerListener[] listeners = new ComputerListener[0];
+
+  // Latest published copy of the state, for readers on other threads. Only
+  // built once something has asked for a snapshot, bumping the version is
+  // all a change costs until then.
+  private volatile ComputerSnapshot snapshot;
+  private volatile long stateVersion = 0;
+  private volatile boolean publishing = false;
+
+  // Memory addresses written since the last snapshot, one bit per address.
+  private final long[] dirtyMemory;
 
   /**
-   * Reset everything on construction.
+   * Constructs a computer with the default 100 memory locations.
    */
   public Computer() {
+    this(DEFAULT_MEMORY_SIZE);
+  }
+
+  /**
+   * Constructs a computer with a different number of memory locations.
+   * Programs must be assembled for the same size, see
+   * {@link Editor#Editor(int)}.
+   * 
+   * @param memorySize The number of memory locations, a power of 10 from
+   *     100 up to {@link #MAX_MEMORY_SIZE}.
+   * @throws IllegalArgumentException If memorySize isn't an allowed size.
+   */
+  public Computer(int memorySize) {
+    if (!isValidMemorySize(memorySize)) {
+      throw new IllegalArgumentException("Invalid memory size " + memorySize);
+    }
+    memory = new int[memorySize];
+    opcodes = new int[memorySize];
+    operands = new int[memorySize];
+    breakpoints = new long[(memorySize + 63) / 64];
+    watchpoints = new long[(memorySize + 63) / 64];
+    dirtyMemory = new long[(memorySize + 63) / 64];
+    maxAddress = memorySize - 1;
     reset();
   }
 
+  /**
+   * Whether a computer can be made with a memory size.
+   * @param memorySize The number of memory locations.
+   * @return true if memorySize is a power of 10 from 100 up to {@link #MAX_MEMORY_SIZE}.
+   */
+  public static boolean isValidMemorySize(int memorySize) {
+    for (int size = DEFAULT_MEMORY_SIZE; size <= MAX_MEMORY_SIZE; size *= 10) {
+      if (size == memorySize) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  /**
+   * Get the number of memory locations.
+   * @return The size of memory, 100 unless the computer was made bigger.
+   */
+  public int getMemorySize() {
+    return memory.length;
+  }
+
   /**
    * Prints the state of the of the CPU registers.
    */
@@ -79,18 +193,413 @@ public class Computer {
   }
 
   /**
-   * Runs one fetch, decode, execute cycle.
+   * Runs one half (either the fetch or the execute) of a fetch, decode, execute cycle.
+   * Does nothing if the computer is waiting for input or is about to fetch from a
+   * breakpoint it hasn't already stopped at.
+   * 
+   * @return NEEDS_INPUT if the computer is waiting for input, NO_INPUT if the input
+   *     channel gave no input, BREAKPOINT or WATCHPOINT if one was reached,
+   *     HALTED or LOOP_DETECTED if the computer halted and CYCLE_LIMIT if the
+   *     step completed and the computer can carry on.
    */
-  public void step() {
-    fetch = !fetch;
-    halted = false;
-    if (fetch) {
-      fetch();
-      programCounter++;
+  public HaltReason step() {
+    if (awaitingInput) {
+      return HaltReason.NEEDS_INPUT;
+    }
+    clearLoopDetected();
+    boolean inputRead = true;
+    boolean watchpointReached = false;
+    try {
+      if (!fetch && (breakpoints[programCounter >>> 6] & (1L << programCounter)) != 0
+          && programCounter != breakpointStop) {
+        breakpointStop = programCounter;
+        return HaltReason.BREAKPOINT;
+      }
+      fetch = !fetch;
+      halted = false;
+      if (fetch) {
+        fetch();
+        programCounter++;
+      } else {
+        inputRead = execute();
+        watchpointReached = watchpointHit;
+        watchpointHit = false;
+        if (metrics != null) {
+          metrics.instructionsExecuted(1);
+          if (halted && !loopDetected) {
+            metrics.halted();
+          }
+        }
+      }
+    } catch (IllegalStateException | ArrayIndexOutOfBoundsException e) {
+      if (metrics != null) {
+        metrics.invalidInstruction();
+      }
+      throw e;
+    }
+    stateChanged();
+
+    if (awaitingInput) {
+      return HaltReason.NEEDS_INPUT;
+    }
+    if (!inputRead) {
+      return HaltReason.NO_INPUT;
+    }
+    if (watchpointReached) {
+      return HaltReason.WATCHPOINT;
+    }
+    if (loopDetected) {
+      return HaltReason.LOOP_DETECTED;
+    }
+    return halted ? HaltReason.HALTED : HaltReason.CYCLE_LIMIT;
+  }
+
+  /**
+   * Undoes the most recent {@link #step()}. If an instruction has been executed
+   * it goes back to having only been fetched, otherwise the fetch is undone and
+   * the computer goes back to the end of the instruction before. Output that has
+   * already been given to an output sink can't be taken back, it is only removed
+   * from the output register.
+   * 
+   * @return false if there is nothing to undo (the history is off, empty or
+   *     the computer has been reset since).
+   */
+  public boolean stepBack() {
+    if (undoJournal == null || undoJournal.isEmpty()) {
+      return false;
+    }
+
+    if (fetch || awaitingInput) {
+      // Undo the fetch, leaving the registers as the previous instruction left them
+      programCounter = undoJournal.getProgramCounter();
+      instructionRegister = undoJournal.getInstruction() / memory.length;
+      addressRegister = undoJournal.getInstruction() % memory.length;
+      undoJournal.pop();
+      fetch = false;
+      awaitingInput = false;
+      // Only a halt instruction (or a reset, which clears the registers) leaves
+      // the computer halted at the end of an instruction
+      halted = instructionRegister == 0;
     } else {
-      execute();
+      // Undo the execute, leaving the instruction fetched
+      int writeAddress = undoJournal.getWriteAddress();
+      if (writeAddress >= 0) {
+        store(writeAddress, undoJournal.getWriteOldValue());
+        undoJournal.clearWrite();
+      }
+      if (instructionRegister == 9 && (addressRegister == 2 || addressRegister == 22)) {
+        output.retract();
+      }
+      accumulator = undoJournal.getAccumulator();
+      input = undoJournal.getInput();
+      programCounter = undoJournal.getProgramCounter() + 1;
+      fetch = true;
+      halted = false;
+    }
+    loopDetected = false;
+    if (loopDetector != null) {
+      loopDetector.inputRead();
+    }
+    stateChanged();
+    return true;
+  }
+
+  /**
+   * Can {@link #stepBack()} undo anything.
+   * @return true if there is history to step back through.
+   */
+  public boolean canStepBack() {
+    return undoJournal != null && !undoJournal.isEmpty();
+  }
+
+  /**
+   * Keeps a history of the most recent instructions so that they can be undone
+   * with {@link #stepBack()}. The history takes 24 bytes per instruction and
+   * once it is full the oldest instructions are forgotten. Runs that keep a
+   * history are always interpreted.
+   * 
+   * @param instructions The number of instructions to remember, 0 to turn
+   *     the history off.
+   */
+  public void setUndoHistory(int instructions) {
+    if (instructions <= 0) {
+      undoJournal = null;
+    } else if (undoJournal == null || undoJournal.capacity() != instructions) {
+      undoJournal = new UndoJournal(instructions);
+    }
+  }
+
+  /**
+   * Get the number of instructions that can be undone.
+   * @return The size of the history, 0 if it is off.
+   */
+  public int getUndoHistory() {
+    return undoJournal == null ? 0 : undoJournal.capacity();
+  }
+
+  /**
+   * Gives input to a computer that is waiting for it and completes the input
+   * instruction. Execution can then be continued with {@link #step()} or
+   * {@link #run(long)}.
+   * 
+   * @param value The input value.
+   * @throws IllegalStateException If the computer is not waiting for input.
+   */
+  public void supplyInput(int value) throws IllegalStateException {
+    if (!awaitingInput) {
+      throw new IllegalStateException("Computer is not waiting for input");
+    }
+    awaitingInput = false;
+    if (metrics != null) {
+      metrics.inputWaited(System.nanoTime() - awaitingSince);
+    }
+    input = value;
+    accumulator = input;
+    if (loopDetector != null) {
+      loopDetector.inputRead();
+    }
+    if (profiler != null) {
+      profiler.executed(programCounter - 1, instructionRegister);
+    }
+    if (coverageMap != null) {
+      coverageMap.executed(programCounter - 1);
+    }
+    if (traceRecorder != null) {
+      trace(programCounter - 1);
+    }
+    stateChanged();
+  }
+
+  /**
+   * Is the computer waiting for input to be supplied.
+   * @return true if an input instruction is waiting on {@link #supplyInput(int)}.
+   */
+  public boolean isAwaitingInput() {
+    return awaitingInput;
+  }
+
+  /**
+   * Runs whole fetch, decode, execute cycles until the computer halts, needs
+   * input or maxCycles instructions have been executed. Unlike {@link #step()} no
+   * notifications are sent while running, listeners are only told about the
+   * final state once the run has stopped. An instruction that has been fetched
+   * but not yet executed is completed first.
+   * 
+   * @param maxCycles The maximum number of instructions to execute.
+   * @return The reason the run stopped along with the number of instructions
+   *     executed and the final accumulator and output.
+   */
+  @Override
+  public RunResult run(long maxCycles) {
+    if (awaitingInput) {
+      return new RunResult(HaltReason.NEEDS_INPUT, 0, accumulator, getOutput());
+    }
+    clearLoopDetected();
+
+    HaltReason reason = HaltReason.CYCLE_LIMIT;
+    long cycles = 0;
+    halted = false;
+
+    try {
+      // Finish off any half completed instruction
+      if (fetch) {
+        fetch = false;
+        cycles++;
+        if (!execute()) {
+          reason = awaitingInput ? HaltReason.NEEDS_INPUT : HaltReason.NO_INPUT;
+        }
+        if (watchpointHit) {
+          watchpointHit = false;
+          reason = HaltReason.WATCHPOINT;
+        }
+      }
+
+      while (!halted && reason == HaltReason.CYCLE_LIMIT && cycles < maxCycles) {
+        if ((breakpoints[programCounter >>> 6] & (1L << programCounter)) != 0
+            && programCounter != breakpointStop) {
+          reason = HaltReason.BREAKPOINT;
+          breakpointStop = programCounter;
+          break;
+        }
+        fetch();
+        programCounter++;
+        cycles++;
+        if (!execute()) {
+          reason = awaitingInput ? HaltReason.NEEDS_INPUT : HaltReason.NO_INPUT;
+        }
+        if (watchpointHit) {
+          watchpointHit = false;
+          reason = HaltReason.WATCHPOINT;
+        }
+      }
+    } catch (IllegalStateException | ArrayIndexOutOfBoundsException e) {
+      halted = true;
+      reason = HaltReason.INVALID_INSTRUCTION;
+    }
+
+    if (halted && reason == HaltReason.CYCLE_LIMIT) {
+      reason = loopDetected ? HaltReason.LOOP_DETECTED : HaltReason.HALTED;
+    }
+
+    if (metrics != null) {
+      metrics.instructionsExecuted(cycles);
+      if (reason == HaltReason.HALTED) {
+        metrics.halted();
+      } else if (reason == HaltReason.INVALID_INSTRUCTION) {
+        metrics.invalidInstruction();
+      }
+    }
+
+    stateChanged();
+    return new RunResult(reason, cycles, accumulator, getOutput());
+  }
+
+  /**
+   * Gives direct access to the memory array. Only for use by execution engines
+   * in this package, writes must go through {@link #store(int, int)}.
+   * 
+   * @return The array backing the computers memory.
+   */
+  int[] getMemoryImage() {
+    return memory;
+  }
+
+  /**
+   * Writes a value to memory keeping the decoded form up to date.
+   * 
+   * @param address The address to write to.
+   * @param value The value to be written.
+   */
+  void store(int address, int value) {
+    if (undoJournal != null) {
+      undoJournal.written(address, memory[address]);
+    }
+    if (loopDetector != null) {
+      loopDetector.memoryWritten(address, memory[address], value);
+    }
+    memory[address] = value;
+    decode(address);
+    dirtyMemory[address >>> 6] |= 1L << address;
+  }
+
+  /**
+   * Get the registered input channel.
+   * @return The input channel or null if none has been registered.
+   */
+  InputChannel getInputChannel() {
+    return inputChannel;
+  }
+
+  /**
+   * Puts the computer into the waiting for input state. Used by execution
+   * engines when an input instruction is run without an input channel.
+   */
+  void awaitInput() {
+    awaitingInput = true;
+    awaitingSince = System.nanoTime();
+  }
+
+  /**
+   * Reads from the input channel, timing how long it takes.
+   * 
+   * @return The input or null if the channel had none.
+   */
+  Integer readInput() {
+    long start = System.nanoTime();
+    Integer value = inputChannel.readInput();
+    if (metrics != null) {
+      metrics.inputWaited(System.nanoTime() - start);
+    }
+    return value;
+  }
+
+  /**
+   * Get where metrics are reported.
+   * 
+   * @return The metrics or null if none are reported.
+   */
+  Metrics getMetrics() {
+    return metrics;
+  }
+
+  /**
+   * Hands the register state back to the computer after another execution
+   * engine has been running the program. Listeners are notified once.
+   * 
+   * @param accumulator The new accumulator value.
+   * @param input The new input register value.
+   * @param programCounter The new program counter.
+   * @param lastAddress The address of the last instruction executed, used to
+   *     fill in the instruction and address registers. Ignored if negative.
+   */
+  void restoreState(int accumulator, int input, int programCounter, int lastAddress) {
+    this.accumulator = accumulator;
+    this.input = input;
+    this.programCounter = programCounter;
+    if (lastAddress >= 0) {
+      instructionRegister = opcodes[lastAddress];
+      addressRegister = operands[lastAddress];
+    }
+    fetch = false;
+    halted = false;
+    loopDetected = false;
+    if (loopDetector != null) {
+      loopDetector.reset();
+    }
+    stateChanged();
+  }
+
+  /**
+   * Records that the computer's state has changed, publishes a new snapshot
+   * if snapshots are being read and then notifies listeners.
+   */
+  private void stateChanged() {
+    stateVersion++;
+    if (publishing) {
+      publishSnapshot();
+    }
+    for (ComputerListener listener : listeners) {
+      listener.computerChanged();
+    }
+  }
+
+  /**
+   * Copies the current state into a new snapshot.
+   */
+  private void publishSnapshot() {
+    snapshot = new ComputerSnapshot(snapshot, stateVersion, memory, dirtyMemory,
+        accumulator, programCounter, instructionRegister, addressRegister, input, output,
+        halted, fetch, awaitingInput, maxAddress, cpuSpeed, breakpoints, watchpoints);
+    Arrays.fill(dirtyMemory, 0);
+  }
+
+  /**
+   * Marks every memory address as changed.
+   */
+  private void markAllMemoryDirty() {
+    Arrays.fill(dirtyMemory, -1L);
+  }
+
+  /**
+   * Get the most recently published snapshot of the computer's state. Snapshots
+   * can safely be read from any thread. Nothing is copied until the first call,
+   * which builds a snapshot while holding the computer's lock (so a thread
+   * changing the computer must hold it too, as the UI does). From then on a
+   * snapshot is published whenever listeners are notified (after each step,
+   * at the end of a run etc).
+   * 
+   * @return The latest snapshot.
+   */
+  public ComputerSnapshot getSnapshot() {
+    if (!publishing) {
+      synchronized (this) {
+        if (!publishing) {
+          publishSnapshot();
+          publishing = true;
+        }
+      }
     }
-    pcs.firePropertyChange("step", false, true);
+    return snapshot;
   }
 
   /**
@@ -98,7 +607,7 @@ public class Computer {
    * @return Numeric representation of the current instruciton.
    */
   public int getFullCurrentInstruction() {
-    return instructionRegister * 100 + addressRegister;
+    return instructionRegister * memory.length + addressRegister;
   }
 
 
@@ -107,9 +616,12 @@ public class Computer {
    * Executes the decoded instruction in the instruction register. Includes
    * writing to memory, the output, accumulator or program counter.
    * 
+   * @return false if input was required but the input channel did not provide
+   *     any (or the computer is now waiting for input), true otherwise.
    * @throws IllegalStateException If an invalid opcode is detected.
    */
-  private void execute() throws IllegalStateException {
+  private boolean execute() throws IllegalStateException {
+    int address = programCounter - 1;
     switch (instructionRegister) {
       // Halt opcode
       case 0:
@@ -125,7 +637,10 @@ public class Computer {
         break;
       // Store opcode
       case 3:
-        memory[addressRegister] = accumulator;
+        store(addressRegister, accumulator);
+        if ((watchpoints[addressRegister >>> 6] & (1L << addressRegister)) != 0) {
+          watchpointHit = true;
+        }
         break;
       // Load opcode
       case 5:
@@ -133,18 +648,30 @@ public class Computer {
         break;
       // Branch always opcode
       case 6:
-        programCounter = addressRegister;
+        branch();
         break;
       // Branch if zero opcode
       case 7:
+        if (profiler != null) {
+          profiler.branched(address, accumulator == 0);
+        }
+        if (coverageMap != null) {
+          coverageMap.branched(address, accumulator == 0);
+        }
         if (accumulator == 0) {
-          programCounter = addressRegister;
+          branch();
         }
         break;
       // Branch if zero or positive opcode
       case 8:
+        if (profiler != null) {
+          profiler.branched(address, accumulator >= 0);
+        }
+        if (coverageMap != null) {
+          coverageMap.branched(address, accumulator >= 0);
+        }
         if (accumulator >= 0) {
-          programCounter = addressRegister;
+          branch();
         }
         break;
       // i/o opcode
@@ -155,17 +682,20 @@ public class Computer {
         } else if (addressRegister == 22) {
           addToOutput(accumulator, true);
         } else if (addressRegister == 1) {   // input address
+          // Without an input channel wait for input to be supplied
           if (inputChannel == null) {
-            throw new IllegalStateException(
-                "Computer has no registered " 
-              + "input channel and therefore is unable to read input");
+            awaitInput();
+            return false;
           }
-          Integer ip = inputChannel.readInput();
+          Integer ip = readInput();
           if (ip == null) {
-            return;
+            return false;
           }
           input = ip;
           accumulator = input;
+          if (loopDetector != null) {
+            loopDetector.inputRead();
+          }
         }
         break;
       // Illegal opcode
@@ -180,25 +710,97 @@ public class Computer {
       + instructionRegister + "" + addressRegister
           + " in address " + programCounter);
     }
+    if (profiler != null) {
+      profiler.executed(address, instructionRegister);
+    }
+    if (coverageMap != null) {
+      coverageMap.executed(address);
+    }
+    if (traceRecorder != null) {
+      trace(address);
+    }
+    return true;
+  }
+
+  /**
+   * Passes the instruction that has just been executed to the trace recorder.
+   * 
+   * @param address The address the instruction was fetched from.
+   */
+  private void trace(int address) {
+    boolean write = instructionRegister == 3;
+    traceRecorder.record(address, getFullCurrentInstruction(), accumulator,
+        write ? addressRegister : -1, write ? accumulator : 0);
+  }
+
+  /**
+   * Sets the program counter to the address register. Backward branches are
+   * passed on to the loop detector (if enabled) which halts the computer if
+   * it is stuck in a loop.
+   */
+  private void branch() {
+    int branchAddress = programCounter - 1;
+    programCounter = addressRegister;
+    if (loopDetector != null && addressRegister <= branchAddress
+        && loopDetector.backwardBranch(accumulator, programCounter)) {
+      loopDetected = true;
+      halted = true;
+    }
+  }
 
+  /**
+   * Forgets a loop found by an earlier step or run, along with the state the
+   * detector remembered, so that carrying on looks for a loop afresh. The
+   * detector otherwise keeps its state between runs so that loops longer
+   * than one run (eg the UI runs in chunks) can still be found.
+   */
+  private void clearLoopDetected() {
+    if (loopDetected) {
+      loopDetected = false;
+      if (loopDetector != null) {
+        loopDetector.inputRead();
+      }
+    }
   }
 
   /**
    * Increments the program counter, fetches the next instruction and decodes it.
    */
   private void fetch() {
-    int instruction = memory[programCounter];
-    instructionRegister = instruction / 100;
-    addressRegister = instruction % 100;
+    breakpointStop = -1;
+    if (undoJournal != null) {
+      undoJournal.fetched(accumulator, programCounter, getFullCurrentInstruction(), input);
+    }
+    instructionRegister = opcodes[programCounter];
+    addressRegister = operands[programCounter];
+  }
+
+  /**
+   * Decodes the contents of a memory address into its opcode and operand.
+   * Must be called whenever the contents of that address changes.
+   * 
+   * @param address The memory address to decode.
+   */
+  private void decode(int address) {
+    int instruction = memory[address];
+    // Stores decode too, dividing by a constant keeps the default size fast
+    if (memory.length == DEFAULT_MEMORY_SIZE) {
+      opcodes[address] = instruction / DEFAULT_MEMORY_SIZE;
+      operands[address] = instruction % DEFAULT_MEMORY_SIZE;
+    } else {
+      opcodes[address] = instruction / memory.length;
+      operands[address] = instruction % memory.length;
+    }
   }
 
   /**
    * Prints the entire contents of the computers memory.
    */
   public void printMemory() {
-    for (int x = 0; x < 10; x++) {
+    String format = "%0" + (String.valueOf(memory.length).length()) + "d ";
+    for (int x = 0; x < memory.length / 10; x++) {
       for (int y = 0; y < 10; y++) {
-        String s = String.format("%03d ", memory[x * 10 + y]);
+        String s = String.format(format, memory[x * 10 + y]);
         System.out.print(s);
       }
       System.out.println();
@@ -210,9 +812,10 @@ public class Computer {
    * registers.
    */
   public void reset() {
-    for (int i = 0; i < memorySize; i++) {
-      memory[i] = 0;
-    }
+    Arrays.fill(memory, 0);
+    Arrays.fill(opcodes, 0);
+    Arrays.fill(operands, 0);
+    markAllMemoryDirty();
     restart();
   }
 
@@ -232,7 +835,8 @@ public class Computer {
     
     // Load the instruction into memory
     for (Instruction i : instructions) {
-      memory[i.getInstructionAddress()] = i.toOpCode();
+      memory[i.getInstructionAddress()] = i.toOpCode(memory.length);
+      decode(i.getInstructionAddress());
 
       if (i.getInstructionAddress() > maxAddress) {
         maxAddress = i.getInstructionAddress();
@@ -247,15 +851,18 @@ public class Computer {
       }
     }
 
+    if (loopDetector != null) {
+      loopDetector.reset();
+    }
+    markAllMemoryDirty();
+    stateChanged();
   }
 
   /**
    * Clear the output register.
    */
   private void clearOutput() {
-    for (int i = 0; i < output.length; i++) {
-      output[i] = "";
-    }
+    output.clear();
   }
 
   /**
@@ -271,8 +878,26 @@ public class Computer {
     addressRegister = 0;
     fetch = false;
     halted = true;
-    pcs.firePropertyChange("step", false, true);
-    pcs.firePropertyChange("reset", false, true);
+    awaitingInput = false;
+    loopDetected = false;
+    watchpointHit = false;
+    breakpointStop = -1;
+    if (loopDetector != null) {
+      loopDetector.reset();
+    }
+    if (undoJournal != null) {
+      undoJournal.clear();
+    }
+    if (profiler != null) {
+      profiler.reset();
+    }
+    if (coverageMap != null) {
+      coverageMap.clear();
+    }
+    stateChanged();
+    for (ComputerListener listener : listeners) {
+      listener.computerReset();
+    }
   }
 
   /**
@@ -300,28 +925,42 @@ public class Computer {
   }
 
   /**
-   *  Get the contents of the output regiser.
+   *  Get the contents of the output regiser, most recent value first.
    * @return The contents of the output register.
    */
   public String[] getOutput() {
+    return output.toStrings();
+  }
+
+  /**
+   * Get the output register without converting it to strings.
+   * @return The ring buffer backing the output register.
+   */
+  public OutputRingBuffer getOutputRegister() {
     return output;
   }
 
   /**
-   * Takes a value and puts it into the output register(s).
+   * Takes a value and puts it into the output register(s) and any registered
+   * output sink.
    * @param value The value to be put into the register
    * @param convert Whether to convert the value into an ascii character.
    */
   public void addToOutput(int value, boolean convert) {
-    for (int i = output.length - 2; i >= 0; i--) {
-      output[i + 1] = output[i];
+    output.write(value, convert);
+    if (outputSink != null) {
+      outputSink.write(value, convert);
     }
-    if (convert) {
-      output[0] = "" + (char) value;
+  }
 
-    } else {
-      output[0] = "" + value;
-    }
+  /**
+   * Register to receive everything the computer outputs. Unlike the output
+   * register nothing is discarded.
+   * 
+   * @param sink The sink that will receive output, or null to stop sending output.
+   */
+  public void registerOutputSink(OutputSink sink) {
+    this.outputSink = sink;
   }
 
   /**
@@ -366,46 +1005,198 @@ public class Computer {
   }
 
   /**
-   * Unregister to receive notifications on the state of the computer.
+   * Register to receive notifications on the state of the computer.
    * 
-   * @param pcl Listener object that no longer wants to receive notifications
+   * @param listener Listener object that wants to receive notifications
    */
-  public void unregisterPropertyChangeListener(PropertyChangeListener pcl) {
-    unregisterPropertyChangeListener(pcl, "step");
+  public synchronized void registerComputerListener(ComputerListener listener) {
+    if (!Arrays.asList(listeners).contains(listener)) {
+      ComputerListener[] added = Arrays.copyOf(listeners, listeners.length + 1);
+      added[listeners.length] = listener;
+      listeners = added;
+    }
   }
-  
+
   /**
    * Unregister to receive notifications on the state of the computer.
    * 
-   * @param pcl Listener object that no longer wants to receive notifications
+   * @param listener Listener object that no longer wants to receive notifications
    */
-  public void unregisterPropertyChangeListener(PropertyChangeListener pcl, String parameter) {
-    pcs.removePropertyChangeListener(parameter, pcl);
+  public synchronized void unregisterComputerListener(ComputerListener listener) {
+    List<ComputerListener> remaining = new ArrayList<ComputerListener>(Arrays.asList(listeners));
+    remaining.remove(listener);
+    listeners = remaining.toArray(new ComputerListener[0]);
   }
 
-  //TODO: Do we really need these methods or can we just make the pcs public? Probs not.
+
   /**
-   * Register to receive notifications on the state of the computer.
+   * Turns detection of endless loops on or off. When on, a run that repeats
+   * exactly the same machine state without reading any input in between is
+   * stopped with {@link HaltReason#LOOP_DETECTED}.
+   * 
+   * @param enabled Whether loops should be detected.
+   */
+  public void setLoopDetection(boolean enabled) {
+    if (enabled && loopDetector == null) {
+      loopDetector = new LoopDetector(memory);
+    } else if (!enabled) {
+      loopDetector = null;
+    }
+  }
+
+  /**
+   * Sets or clears a breakpoint. {@link #run(long)} stops with
+   * {@link HaltReason#BREAKPOINT} before fetching an instruction from an address
+   * with a breakpoint, unless it stopped at that same breakpoint last time.
    * 
-   * @param pcl Listener object that wants to receive notifications
+   * @param address The memory address.
+   * @param set true to set the breakpoint, false to clear it.
    */
-  public void registerPropertyChangeListener(PropertyChangeListener pcl) {
-    registerPropertyChangeListener(pcl, "step");
+  public void setBreakpoint(int address, boolean set) {
+    setBit(breakpoints, address, set);
   }
 
+  public boolean isBreakpoint(int address) {
+    return (breakpoints[address >>> 6] & (1L << address)) != 0;
+  }
 
   /**
-   * Register to receive notifications on the state of the computer.
+   * Sets or clears a watchpoint. {@link #run(long)} stops with
+   * {@link HaltReason#WATCHPOINT} after a store to an address with a watchpoint.
+   * 
+   * @param address The memory address.
+   * @param set true to set the watchpoint, false to clear it.
+   */
+  public void setWatchpoint(int address, boolean set) {
+    setBit(watchpoints, address, set);
+  }
+
+  public boolean isWatchpoint(int address) {
+    return (watchpoints[address >>> 6] & (1L << address)) != 0;
+  }
+
+  /**
+   * Clears every breakpoint and watchpoint.
+   */
+  public void clearBreakpoints() {
+    Arrays.fill(breakpoints, 0);
+    Arrays.fill(watchpoints, 0);
+    markAllMemoryDirty();
+    stateChanged();
+  }
+
+  /**
+   * Are any breakpoints or watchpoints set.
+   * @return true if a run may be stopped by a breakpoint or watchpoint.
+   */
+  public boolean hasBreakpoints() {
+    for (int i = 0; i < breakpoints.length; i++) {
+      if (breakpoints[i] != 0 || watchpoints[i] != 0) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  private void setBit(long[] bits, int address, boolean set) {
+    if (address < 0 || address >= memory.length) {
+      throw new IndexOutOfBoundsException("No memory address " + address);
+    }
+    if (set) {
+      bits[address >>> 6] |= 1L << address;
+    } else {
+      bits[address >>> 6] &= ~(1L << address);
+    }
+    // Shown alongside the memory so treat it as a change to the address
+    dirtyMemory[address >>> 6] |= 1L << address;
+    stateChanged();
+  }
+
+  /**
+   * Sets where the computer reports the number of instructions executed,
+   * halts, invalid instructions and time spent waiting for input. By default
+   * this is {@link Metrics#getGlobal()}.
+   * 
+   * @param metrics The metrics, or null to not report anything.
+   */
+  public void setMetrics(Metrics metrics) {
+    this.metrics = metrics;
+  }
+
+  /**
+   * Sets the profiler that counts the instructions executed. The counts are
+   * reset whenever the computer is restarted or a program is loaded. Runs
+   * with a profiler are always interpreted.
+   * 
+   * @param profiler The profiler, or null to stop profiling.
+   * @throws IllegalArgumentException If the profiler has fewer addresses than memory.
+   */
+  public void setProfiler(Profiler profiler) {
+    if (profiler != null && profiler.getMemorySize() < memory.length) {
+      throw new IllegalArgumentException("Profiler is too small for " + memory.length
+          + " addresses");
+    }
+    this.profiler = profiler;
+  }
+
+  public Profiler getProfiler() {
+    return profiler;
+  }
+
+  /**
+   * Sets where the instructions and branches that have been run are
+   * recorded. The map is cleared whenever the computer is restarted or a
+   * program is loaded. Runs with a coverage map are always interpreted.
+   * 
+   * @param coverageMap The coverage map, or null to stop recording.
+   * @throws IllegalArgumentException If the map has fewer addresses than memory.
+   */
+  public void setCoverageMap(CoverageMap coverageMap) {
+    if (coverageMap != null && coverageMap.getMemorySize() < memory.length) {
+      throw new IllegalArgumentException("Coverage map is too small for " + memory.length
+          + " addresses");
+    }
+    this.coverageMap = coverageMap;
+  }
+
+  public CoverageMap getCoverageMap() {
+    return coverageMap;
+  }
+
+  /**
+   * Sets where every executed instruction is recorded. Runs with a trace
+   * recorder are always interpreted.
    * 
-   * @param pcl Listener object that wants to receive notifications
+   * @param recorder The recorder, or null to stop recording.
+   * @throws IllegalArgumentException If the recorder is for a different memory size.
    */
-  public void registerPropertyChangeListener(PropertyChangeListener pcl, String parameter) {
-    pcs.addPropertyChangeListener(parameter, pcl);
+  public void setTraceRecorder(TraceRecorder recorder) {
+    if (recorder != null && recorder.getMemorySize() != memory.length) {
+      throw new IllegalArgumentException("Trace recorder is for " + recorder.getMemorySize()
+          + " addresses, not " + memory.length);
+    }
+    this.traceRecorder = recorder;
   }
 
+  /**
+   * Get the trace recorder.
+   * @return The trace recorder or null if instructions are not being recorded.
+   */
+  public TraceRecorder getTraceRecorder() {
+    return traceRecorder;
+  }
 
   /**
-   * Register to provide input to the computer when required.
+   * Is loop detection turned on.
+   * @return true if endless loops will be detected.
+   */
+  public boolean isLoopDetection() {
+    return loopDetector != null;
+  }
+
+  /**
+   * Register to provide input to the computer when required. Without an input
+   * channel the computer waits for input to be given by {@link #supplyInput(int)}.
    * 
    * @param ic Input provider that will provide input when demanded by the computer.
    */
@@ -423,20 +1214,22 @@ public class Computer {
   
   /**
    * Sets the CPU speed but limits it to between MIN_CPU_SPEED and
-   * MAX_CPU_SPEED (default 1 and 20). This is the rate in Hz that the
-   * computer will run fetch execute cycles. A speed of 20 results in
-   * a 10 Hz CPU (10 fetches and 10 executes in a second).
+   * MAX_CPU_SPEED (default 1 and 1024) unless it is UNTHROTTLED_CPU_SPEED.
+   * This is the rate in Hz that the computer will run fetch execute cycles.
+   * A speed of 20 results in a 10 Hz CPU (10 fetches and 10 executes in a second).
    * @param cpuSpeed the cpu speed
    */
   public void setCpuSpeed(int cpuSpeed) {
-    if (cpuSpeed < MIN_CPU_SPEED) {
-      cpuSpeed = MIN_CPU_SPEED;
+    if (cpuSpeed == UNTHROTTLED_CPU_SPEED) {
+      this.cpuSpeed = cpuSpeed;
+    } else if (cpuSpeed < MIN_CPU_SPEED) {
+      this.cpuSpeed = MIN_CPU_SPEED;
     } else if (cpuSpeed > MAX_CPU_SPEED) {
-      cpuSpeed = MAX_CPU_SPEED;
+      this.cpuSpeed = MAX_CPU_SPEED;
     } else {
       this.cpuSpeed = cpuSpeed;
     }
-    pcs.firePropertyChange("step", false, true);
+    stateChanged();
   }
   
 }
@@ -0,0 +1,26 @@
+package computer.model;
+
+/**
+ * Classes that want to be told about changes to a {@link Computer} should
+ * implement this interface and register themselves with
+ * {@link Computer#registerComputerListener(ComputerListener)}. Both methods
+ * do nothing by default and may be called from whichever thread is running
+ * the computer.
+ *
+ * @author tomblanchard
+ *
+ */
+public interface ComputerListener {
+
+  /**
+   * Called after the state of the computer has changed, eg after a step.
+   */
+  default void computerChanged() {
+  }
+
+  /**
+   * Called after the computer has been reset.
+   */
+  default void computerReset() {
+  }
+}
@@ -0,0 +1,258 @@
+package computer.model;
+
+import java.util.Arrays;
+
+/**
+ * An immutable copy of the state of a {@link Computer} at one point in time.
+ * Snapshots are published by the computer each time it notifies its listeners,
+ * so they can be read from any thread (eg to draw the computer) without ever
+ * seeing a half updated state and without locking the computer.
+ *
+ * <p>Each snapshot also records the version in which every memory address and
+ * register last changed. A reader that remembers the version it last looked at
+ * can then find out exactly what has changed since, even if it skipped some
+ * snapshots in between.
+ *
+ * @author tomblanchard
+ *
+ */
+public final class ComputerSnapshot {
+
+  // Registers (and other displayed state) whose changes are tracked.
+  public static final int PROGRAM_COUNTER = 0;
+  public static final int INSTRUCTION_REGISTER = 1;
+  public static final int ADDRESS_REGISTER = 2;
+  public static final int ACCUMULATOR = 3;
+  public static final int INPUT = 4;
+  public static final int OUTPUT = 5;
+  // Halted, fetch or execute and waiting for input.
+  public static final int STATUS = 6;
+  public static final int HIGHEST_USED_ADDRESS = 7;
+  public static final int CPU_SPEED = 8;
+  private static final int REGISTER_COUNT = 9;
+
+  private final long version;
+  private final int[] memory;
+  private final int accumulator;
+  private final int programCounter;
+  private final int instructionRegister;
+  private final int addressRegister;
+  private final int input;
+  private final int[] outputValues;
+  private final boolean[] outputCharacters;
+  private final int outputCapacity;
+  private final boolean halted;
+  private final boolean fetch;
+  private final boolean awaitingInput;
+  private final int highestUsedAddress;
+  private final int cpuSpeed;
+  private final long outputModifications;
+  private final long[] breakpoints;
+  private final long[] watchpoints;
+
+  // The version each address and register last changed in.
+  private final long[] memoryVersions;
+  private final long[] registerVersions;
+
+  ComputerSnapshot(ComputerSnapshot previous, long version, int[] memory, long[] dirtyMemory,
+      int accumulator, int programCounter, int instructionRegister, int addressRegister,
+      int input, OutputRingBuffer output, boolean halted, boolean fetch, boolean awaitingInput,
+      int highestUsedAddress, int cpuSpeed, long[] breakpoints, long[] watchpoints) {
+    this.version = version;
+    this.memory = memory.clone();
+    this.accumulator = accumulator;
+    this.programCounter = programCounter;
+    this.instructionRegister = instructionRegister;
+    this.addressRegister = addressRegister;
+    this.input = input;
+    this.halted = halted;
+    this.fetch = fetch;
+    this.awaitingInput = awaitingInput;
+    this.highestUsedAddress = highestUsedAddress;
+    this.cpuSpeed = cpuSpeed;
+    this.breakpoints = breakpoints.clone();
+    this.watchpoints = watchpoints.clone();
+    this.outputModifications = output.getModificationCount();
+
+    // Copy the output register, most recent first
+    outputCapacity = output.capacity();
+    outputValues = new int[output.size()];
+    outputCharacters = new boolean[output.size()];
+    for (int age = 0; age < outputValues.length; age++) {
+      outputValues[age] = output.getValue(age);
+      outputCharacters[age] = output.isCharacter(age);
+    }
+
+    if (previous == null || previous.memory.length != memory.length) {
+      memoryVersions = new long[memory.length];
+      registerVersions = new long[REGISTER_COUNT];
+      Arrays.fill(memoryVersions, version);
+      Arrays.fill(registerVersions, version);
+      return;
+    }
+
+    memoryVersions = previous.memoryVersions.clone();
+    for (int address = 0; address < memory.length; address++) {
+      if ((dirtyMemory[address >>> 6] & (1L << address)) != 0) {
+        memoryVersions[address] = version;
+      }
+    }
+
+    registerVersions = previous.registerVersions.clone();
+    markIfChanged(PROGRAM_COUNTER, previous.programCounter != programCounter);
+    markIfChanged(INSTRUCTION_REGISTER, previous.instructionRegister != instructionRegister);
+    markIfChanged(ADDRESS_REGISTER, previous.addressRegister != addressRegister);
+    markIfChanged(ACCUMULATOR, previous.accumulator != accumulator);
+    markIfChanged(INPUT, previous.input != input);
+    markIfChanged(OUTPUT, previous.outputModifications != outputModifications);
+    markIfChanged(STATUS, previous.halted != halted || previous.fetch != fetch
+        || previous.awaitingInput != awaitingInput
+        || previous.instructionRegister != instructionRegister
+        || previous.addressRegister != addressRegister);
+    markIfChanged(HIGHEST_USED_ADDRESS, previous.highestUsedAddress != highestUsedAddress);
+    markIfChanged(CPU_SPEED, previous.cpuSpeed != cpuSpeed);
+  }
+
+  private void markIfChanged(int register, boolean changed) {
+    if (changed) {
+      registerVersions[register] = version;
+    }
+  }
+
+  /**
+   * Whether a memory address has changed since an earlier snapshot.
+   * @param address The memory address.
+   * @param sinceVersion The version of the earlier snapshot.
+   * @return true if the address was written after that snapshot.
+   */
+  public boolean isMemoryChanged(int address, long sinceVersion) {
+    return memoryVersions[address] > sinceVersion;
+  }
+
+  /**
+   * Whether a register has changed since an earlier snapshot.
+   * @param register The register, eg {@link #ACCUMULATOR}.
+   * @param sinceVersion The version of the earlier snapshot.
+   * @return true if the register changed after that snapshot.
+   */
+  public boolean isRegisterChanged(int register, long sinceVersion) {
+    return registerVersions[register] > sinceVersion;
+  }
+
+  /**
+   * Get the version of this snapshot. Each snapshot published by a computer
+   * has a higher version than the one before.
+   * @return The version number.
+   */
+  public long getVersion() {
+    return version;
+  }
+
+  public int getMemory(int index) {
+    return memory[index];
+  }
+
+  public int getMemorySize() {
+    return memory.length;
+  }
+
+  public int getAccumulator() {
+    return accumulator;
+  }
+
+  public int getProgramCounter() {
+    return programCounter;
+  }
+
+  public int getInstructionRegister() {
+    return instructionRegister;
+  }
+
+  public int getAddressRegister() {
+    return addressRegister;
+  }
+
+  /**
+   * Get the current instruction combined with the address register.
+   * @return Numeric representation of the current instruciton.
+   */
+  public int getFullCurrentInstruction() {
+    return instructionRegister * memory.length + addressRegister;
+  }
+
+  public int getInput() {
+    return input;
+  }
+
+  /**
+   * Get the number of values in the output register.
+   * @return The number of values that have been output, up to the size of the register.
+   */
+  public int getOutputSize() {
+    return outputValues.length;
+  }
+
+  /**
+   * Get a value from the output register.
+   * @param age How many values ago the value was output, 0 is the most recent.
+   * @return The value.
+   */
+  public int getOutputValue(int age) {
+    return outputValues[age];
+  }
+
+  /**
+   * Whether a value in the output register was output as a character.
+   * @param age How many values ago the value was output, 0 is the most recent.
+   * @return true if the value should be shown as a character.
+   */
+  public boolean isOutputCharacter(int age) {
+    return outputCharacters[age];
+  }
+
+  /**
+   *  Get the contents of the output regiser as strings, most recent value first.
+   * @return The contents of the output register.
+   */
+  public String[] getOutput() {
+    String[] strings = new String[outputCapacity];
+    for (int age = 0; age < strings.length; age++) {
+      if (age >= outputValues.length) {
+        strings[age] = "";
+      } else if (outputCharacters[age]) {
+        strings[age] = "" + (char) outputValues[age];
+      } else {
+        strings[age] = "" + outputValues[age];
+      }
+    }
+    return strings;
+  }
+
+  public boolean isHalted() {
+    return halted;
+  }
+
+  public boolean isFetch() {
+    return fetch;
+  }
+
+  public boolean isAwaitingInput() {
+    return awaitingInput;
+  }
+
+  public int getHighestUsedAddress() {
+    return highestUsedAddress;
+  }
+
+  public int getCpuSpeed() {
+    return cpuSpeed;
+  }
+
+  public boolean isBreakpoint(int address) {
+    return (breakpoints[address >>> 6] & (1L << address)) != 0;
+  }
+
+  public boolean isWatchpoint(int address) {
+    return (watchpoints[address >>> 6] & (1L << address)) != 0;
+  }
+}
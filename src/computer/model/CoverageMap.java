@@ -0,0 +1,192 @@
+package computer.model;
+
+import java.util.Arrays;
+
+/**
+ * Records which parts of a program have been run, one bit per memory
+ * address for whether it was executed and two more for whether a BRZ or BRP
+ * there was taken and not taken. Attach one to a computer with
+ * {@link Computer#setCoverageMap(CoverageMap)}. Recording only sets bits so
+ * nothing is allocated while a program runs.
+ *
+ * @author tomblanchard
+ *
+ */
+public final class CoverageMap {
+  private final int memorySize;
+  private final long[] executed;
+  private final long[] taken;
+  private final long[] notTaken;
+
+  /**
+   * Constructs a coverage map for a computer with the default memory size.
+   */
+  public CoverageMap() {
+    this(Computer.DEFAULT_MEMORY_SIZE);
+  }
+
+  /**
+   * Constructs a coverage map.
+   * @param memorySize The number of memory addresses.
+   */
+  public CoverageMap(int memorySize) {
+    this.memorySize = memorySize;
+    executed = new long[(memorySize + 63) / 64];
+    taken = new long[executed.length];
+    notTaken = new long[executed.length];
+  }
+
+  /**
+   * Records an executed instruction.
+   * @param address The address it was fetched from.
+   */
+  void executed(int address) {
+    executed[address >>> 6] |= 1L << address;
+  }
+
+  /**
+   * Records a conditional branch.
+   * @param address The address of the branch instruction.
+   * @param branchTaken Whether the branch was taken.
+   */
+  void branched(int address, boolean branchTaken) {
+    if (branchTaken) {
+      taken[address >>> 6] |= 1L << address;
+    } else {
+      notTaken[address >>> 6] |= 1L << address;
+    }
+  }
+
+  /**
+   * Forgets everything that has been recorded.
+   */
+  public void clear() {
+    Arrays.fill(executed, 0);
+    Arrays.fill(taken, 0);
+    Arrays.fill(notTaken, 0);
+  }
+
+  public int getMemorySize() {
+    return memorySize;
+  }
+
+  public boolean isExecuted(int address) {
+    return (executed[address >>> 6] & (1L << address)) != 0;
+  }
+
+  public boolean isTaken(int address) {
+    return (taken[address >>> 6] & (1L << address)) != 0;
+  }
+
+  public boolean isNotTaken(int address) {
+    return (notTaken[address >>> 6] & (1L << address)) != 0;
+  }
+
+  /**
+   * Finds the next executed address, for going through a large memory
+   * without checking every address.
+   * @param from The address to start looking at.
+   * @return The lowest executed address at or after from, or -1 if there isn't one.
+   */
+  public int nextExecuted(int from) {
+    if (from >= memorySize) {
+      return -1;
+    }
+    int word = from >>> 6;
+    long bits = executed[word] & (-1L << from);
+    while (bits == 0) {
+      if (++word == executed.length) {
+        return -1;
+      }
+      bits = executed[word];
+    }
+    return (word << 6) + Long.numberOfTrailingZeros(bits);
+  }
+
+  /**
+   * Get the number of addresses executed plus the number of branch
+   * directions taken.
+   * @return The number of bits set.
+   */
+  public int count() {
+    int count = 0;
+    for (int i = 0; i < executed.length; i++) {
+      count += Long.bitCount(executed[i]) + Long.bitCount(taken[i])
+          + Long.bitCount(notTaken[i]);
+    }
+    return count;
+  }
+
+  /**
+   * Get the number of bits set in other that are not set in this map.
+   * @param other Coverage of the same size.
+   * @return How much other would add to this map.
+   */
+  public int countNew(CoverageMap other) {
+    int count = 0;
+    for (int i = 0; i < executed.length; i++) {
+      count += Long.bitCount(other.executed[i] & ~executed[i])
+          + Long.bitCount(other.taken[i] & ~taken[i])
+          + Long.bitCount(other.notTaken[i] & ~notTaken[i]);
+    }
+    return count;
+  }
+
+  /**
+   * Whether other has covered anything this map hasn't.
+   * @param other Coverage of the same size.
+   * @return true if other has any bit set that this map doesn't.
+   */
+  public boolean hasNew(CoverageMap other) {
+    for (int i = 0; i < executed.length; i++) {
+      if ((other.executed[i] & ~executed[i]) != 0 || (other.taken[i] & ~taken[i]) != 0
+          || (other.notTaken[i] & ~notTaken[i]) != 0) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  /**
+   * Adds everything covered by other to this map.
+   * @param other Coverage of the same size.
+   */
+  public void merge(CoverageMap other) {
+    for (int i = 0; i < executed.length; i++) {
+      executed[i] |= other.executed[i];
+      taken[i] |= other.taken[i];
+      notTaken[i] |= other.notTaken[i];
+    }
+  }
+
+  /**
+   * Adds coverage held in an array laid out as {@link #copyTo(long[], int)} writes it.
+   */
+  void merge(long[] bits, int offset, int words) {
+    for (int i = 0; i < words; i++) {
+      executed[i] |= bits[offset + i];
+      taken[i] |= bits[offset + words + i];
+      notTaken[i] |= bits[offset + words * 2 + i];
+    }
+  }
+
+  /**
+   * Writes the executed, taken and not taken bits one after another into an array.
+   */
+  void copyTo(long[] bits, int offset) {
+    int words = executed.length;
+    System.arraycopy(executed, 0, bits, offset, words);
+    System.arraycopy(taken, 0, bits, offset + words, words);
+    System.arraycopy(notTaken, 0, bits, offset + words * 2, words);
+  }
+
+  /**
+   * Makes an independent copy of this map.
+   * @return The copy.
+   */
+  public CoverageMap copy() {
+    CoverageMap copy = new CoverageMap(memorySize);
+    copy.merge(this);
+    return copy;
+  }
+}
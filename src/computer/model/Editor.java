@@ -1,5 +1,6 @@
 package computer.model;
 
+import computer.CoreMessages;
 import computer.ParseException;
 import computer.instruction.AddressedInstruction;
 import computer.instruction.Instruction;
@@ -9,7 +10,6 @@ import java.util.Arrays;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
-import language.Messages;
 
 /**
  * Editor Model class that deals with parsing the contents of the code editor
@@ -28,7 +28,24 @@ public class Editor {
   private ArrayList<Instruction> instructions = new ArrayList<Instruction>();
   private HashMap<Integer, String> comments = new HashMap<Integer, String>();
 
+  // Addresses must fit the memory of the computer the program is for.
+  private final int memorySize;
+
   public Editor() {
+    this(Computer.DEFAULT_MEMORY_SIZE);
+  }
+
+  /**
+   * Constructs an editor that assembles programs for a computer with a
+   * different number of memory addresses, see {@link Computer#Computer(int)}.
+   * @param memorySize The number of memory addresses.
+   */
+  public Editor(int memorySize) {
+    this.memorySize = memorySize;
+  }
+
+  public int getMemorySize() {
+    return memorySize;
   }
 
   /**
@@ -148,7 +165,7 @@ public class Editor {
     //First token is a label
     if (!isInstruction(tokens[0])) {
       throw new ParseException(
-          Messages.getTranslatedString("S_ERR_INSTRUCTION_EXPECTED"), tokens[0], lineNumber);
+          CoreMessages.getTranslatedString("S_ERR_INSTRUCTION_EXPECTED"), tokens[0], lineNumber);
     
     //First token is NOT a label it is a valid instruction
     } else {
@@ -161,7 +178,7 @@ public class Editor {
         //If the instruction does not take a parameter but there is a parameter throw exception
         if (tokens.length == 2) {
           throw new ParseException(
-              Messages.getTranslatedString("S_ERR_POINTLESS_PARAMETER"), tokens[0], lineNumber);
+              CoreMessages.getTranslatedString("S_ERR_POINTLESS_PARAMETER"), tokens[0], lineNumber);
         }
         
         //Create a new instruction and add it
@@ -185,7 +202,8 @@ public class Editor {
           // If instruction is not DAT and parameter is missing throw exception
           } else {
             throw new ParseException(
-                Messages.getTranslatedString("S_ERR_PARAMETER_EXPECTED"), tokens[0], lineNumber);
+                CoreMessages.getTranslatedString("S_ERR_PARAMETER_EXPECTED"), tokens[0],
+                lineNumber);
           }
         //Parameter is available for this instruction
         } else {
@@ -198,9 +216,9 @@ public class Editor {
             try {
               int a = Integer.parseInt(tokens[1]);
               // bugfix: don't check dat values 
-              if (!(tokens[0].equals("DAT")) && a >= Computer.memorySize || a < 0) {
+              if (!(tokens[0].equals("DAT")) && a >= memorySize || a < 0) {
                 throw new ParseException(
-                    Messages.getTranslatedString("S_ERR_ADDRESS"), tokens[1], lineNumber);
+                    CoreMessages.getTranslatedString("S_ERR_ADDRESS"), tokens[1], lineNumber);
 
               }
               instruction = new AddressedInstruction(Mnemonic.valueOf(tokens[0]), lineNumber, a);
@@ -215,7 +233,7 @@ public class Editor {
 
           } else {
             throw new ParseException(
-                Messages.getTranslatedString("S_ERR_LABEL_NAME"), tokens[1], lineNumber);
+                CoreMessages.getTranslatedString("S_ERR_LABEL_NAME"), tokens[1], lineNumber);
           }
         }
       }
@@ -243,8 +261,8 @@ public class Editor {
 
           if (!labels.containsKey(label)) {
             throw new ParseException(
-                Messages.getTranslatedString("L_ERR_LABEL_UNLINKED"), ai.getMnemonic().toString(),
-                ai.getInstructionAddress());
+                CoreMessages.getTranslatedString("L_ERR_LABEL_UNLINKED"),
+                ai.getMnemonic().toString(), ai.getInstructionAddress());
           } else {
             int address = labels.get(label);
             ai.resolve(address);
@@ -279,7 +297,14 @@ public class Editor {
       
       // Can't have empty lines
       if (line.length() == 0) {
-        throw new ParseException(Messages.getTranslatedString("S_ERR_COMMENT_EOL"), "", address);
+        throw new ParseException(
+            CoreMessages.getTranslatedString("S_ERR_COMMENT_EOL"), "", address);
+      }
+
+      // Every line takes up an address so the program must fit in memory
+      if (address >= memorySize) {
+        throw new ParseException(
+            CoreMessages.getTranslatedString("S_ERR_ADDRESS"), "" + address, address);
       }
 
       // parse each line and increment the current instruction address
@@ -311,7 +336,8 @@ public class Editor {
           }
         }
         // Potentially an instruction refers to a label that was never defined. If so, report it.
-        throw new ParseException(Messages.getTranslatedString("L_ERR_NOT_DEFINED"), s, lineNumber);
+        throw new ParseException(
+            CoreMessages.getTranslatedString("L_ERR_NOT_DEFINED"), s, lineNumber);
       }
     }
 
@@ -325,7 +351,7 @@ public class Editor {
 
     if (tokens.length > 3) {
       throw new ParseException(
-          Messages.getTranslatedString("S_ERR_TOO_MANY_TOKENS"), line, lineNumber);
+          CoreMessages.getTranslatedString("S_ERR_TOO_MANY_TOKENS"), line, lineNumber);
     }
 
     if (!isInstruction(tokens[0])) {
@@ -333,13 +359,13 @@ public class Editor {
       // If we dont have an instruction, we have a label and a label cant be a number
       if (isNumber(tokens[0])) {
         throw new ParseException(
-            Messages.getTranslatedString("S_ERR_NUMBER_NOT_LABEL"), tokens[0], lineNumber);
+            CoreMessages.getTranslatedString("S_ERR_NUMBER_NOT_LABEL"), tokens[0], lineNumber);
       }
       
       // Cannot have a label all by itself
       if (tokens.length == 1) {
         throw new ParseException(
-            Messages.getTranslatedString("S_ERR_LONELY_LABEL"), line, lineNumber);
+            CoreMessages.getTranslatedString("S_ERR_LONELY_LABEL"), line, lineNumber);
       }
 
       // If we have alread 
@@ -443,6 +469,46 @@ public class Editor {
     return line;
   }
   
+  /**
+   * Reduces source text to what matters when assembling it: comments are
+   * stripped as in {@link #stripComments(String, int)} and the whitespace
+   * between tokens is collapsed to one space. Empty lines are dropped as in
+   * {@link #setText(String)}, other lines are kept even if nothing is left of
+   * them so that line numbers and errors don't change. Texts with the same
+   * normalised form assemble to the same program.
+   * @param text The source text.
+   * @return The normalised text, one line per line kept.
+   */
+  public static String normalise(String text) {
+    StringBuilder sb = new StringBuilder(text.length());
+    for (String line : text.split("\n")) {
+      if (line.length() == 0) {
+        continue;
+      }
+      int index = line.indexOf("//");
+      if (index >= 0) {
+        line = line.substring(0, index);
+      }
+      line = line.trim();
+      // Collapse each run of whitespace as parse splits tokens on it
+      boolean space = false;
+      for (int i = 0; i < line.length(); i++) {
+        char c = line.charAt(i);
+        if (c == ' ' || c == '\t' || c == '\n' || c == '\u000B' || c == '\f' || c == '\r') {
+          space = true;
+        } else {
+          if (space) {
+            sb.append(' ');
+            space = false;
+          }
+          sb.append(c);
+        }
+      }
+      sb.append('\n');
+    }
+    return sb.toString();
+  }
+
   /**
    * Gets the instructions from the editor.
    * @return all of the instructions that have been parsed.
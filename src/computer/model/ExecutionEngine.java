@@ -0,0 +1,13 @@
+package computer.model;
+
+/**
+ * Interface to represent something that can run a loaded LMC program until it
+ * halts. Allows the interpreter in {@link Computer} and the compiled tier in
+ * {@link CompiledProgram} to be swapped per program.
+ *
+ * @author tomblanchard
+ *
+ */
+public interface ExecutionEngine {
+  RunResult run(long maxCycles);
+}
@@ -0,0 +1,27 @@
+package computer.model;
+
+/**
+ * The reasons a headless run of the {@link Computer} can stop.
+ *
+ * @author tomblanchard
+ *
+ */
+public enum HaltReason {
+  // The program executed a HLT instruction.
+  HALTED,
+  // The cycle budget given to the run was used up before the program halted.
+  CYCLE_LIMIT,
+  // An invalid opcode (or an address outside of memory) was encountered.
+  INVALID_INSTRUCTION,
+  // The input channel had no input to give.
+  NO_INPUT,
+  // There is no input channel and the program is waiting for input. The run
+  // can be continued by giving the computer some input.
+  NEEDS_INPUT,
+  // The program repeated a previous state exactly and so would never halt.
+  LOOP_DETECTED,
+  // The next instruction to be fetched is at an address with a breakpoint.
+  BREAKPOINT,
+  // The program stored to a memory address with a watchpoint.
+  WATCHPOINT
+}
@@ -0,0 +1,510 @@
+package computer.model;
+
+import computer.instruction.Instruction;
+import computer.metrics.Metrics;
+import java.io.StringWriter;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Runs one program over many input vectors at once. Each run is a lane, and
+ * the state of every lane is kept in flat arrays (one accumulator, cycle count
+ * and input position per lane, and every lane's memory in a single array)
+ * rather than in a {@link Computer} per run.
+ *
+ * <p>Lanes waiting to execute the same address are kept together in a list and
+ * each instruction is decoded once and then executed for the whole list. A
+ * list only splits when a conditional branch goes different ways for
+ * different lanes (or a lane halts or runs out of input). The lowest address
+ * with waiting lanes is always run next, so lanes that have split up wait for
+ * each other and join up again as soon as they reach the same address.
+ *
+ * <p>The results are the same as running each input through its own computer
+ * with a {@link QueueInputChannel} and a {@link StreamingOutputSink}. Programs
+ * that might store into their own code can't share the decoded instructions
+ * and so are run one lane at a time by a {@link Computer}.
+ *
+ * <p>Every lane has its own copy of memory, so the number of lanes in one run
+ * is limited by the memory size, see {@link #getMaxLanes(int)}.
+ *
+ * @author tomblanchard
+ *
+ */
+public final class LockstepComputer {
+  // Most memory locations of all the lanes together (16MB of ints).
+  private static final int LANE_MEMORY_BUDGET = 1 << 22;
+
+  private final ArrayList<Instruction> program;
+  private final int memorySize;
+  private final int[] image;
+  private final int[] opcodes;
+  private final int[] operands;
+  private final boolean lockstep;
+
+  // Where instructions, halts and invalid instructions are reported, null for nowhere.
+  private Metrics metrics = Metrics.getGlobal();
+
+  // Optional coverage of each lane, laid out as in a CoverageMap: coverageWords
+  // of executed bits, then taken bits, then not taken bits.
+  private boolean coverage = false;
+  private boolean covered = false;
+  private final int coverageWords;
+  private long[] laneCoverage = new long[0];
+
+  // State of each lane, lane i's memory starts at i * memorySize.
+  private int lanes = 0;
+  private int[] memory = new int[0];
+  private int[] accumulators = new int[0];
+  private long[] cycles = new long[0];
+  private HaltReason[] haltReasons = new HaltReason[0];
+  private StringBuilder[] outputs = new StringBuilder[0];
+
+  // Every lane's input in one array, each lane reads from its position up to its end.
+  private int[] inputs = new int[0];
+  private int[] inputPositions = new int[0];
+  private int[] inputEnds = new int[0];
+
+  // Lanes waiting at each address as linked lists through nextLane, -1 ends a
+  // list. Lanes that have run off the end of memory wait at memorySize.
+  private int[] nextLane = new int[0];
+  private final int[] waitingHead;
+  private final int[] waitingTail;
+  private final long[] waiting;
+  // No word of waiting before this one has any bits set.
+  private int firstWaitingWord;
+
+  // Lanes leaving the address being executed, by falling through or branching.
+  private int fallThroughHead;
+  private int fallThroughTail;
+  private int branchHead;
+  private int branchTail;
+
+  /**
+   * Constructs a lockstep computer with the default 100 memory locations.
+   * @param program The assembled program, see {@link Editor#getInstructions()}.
+   */
+  public LockstepComputer(ArrayList<Instruction> program) {
+    this(program, Computer.DEFAULT_MEMORY_SIZE);
+  }
+
+  /**
+   * Constructs a lockstep computer.
+   * @param program The assembled program, see {@link Editor#getInstructions()}.
+   * @param memorySize The number of memory locations, see {@link Computer#Computer(int)}.
+   */
+  public LockstepComputer(ArrayList<Instruction> program, int memorySize) {
+    if (!Computer.isValidMemorySize(memorySize)) {
+      throw new IllegalArgumentException("Invalid memory size " + memorySize);
+    }
+    this.program = program;
+    this.memorySize = memorySize;
+
+    image = new int[memorySize];
+    opcodes = new int[memorySize];
+    operands = new int[memorySize];
+    for (Instruction instruction : program) {
+      image[instruction.getInstructionAddress()] = instruction.toOpCode(memorySize);
+    }
+    for (int address = 0; address < memorySize; address++) {
+      opcodes[address] = image[address] / memorySize;
+      operands[address] = image[address] % memorySize;
+    }
+    lockstep = !CompiledProgram.writesToCode(image, CompiledProgram.findReachable(image));
+
+    coverageWords = (memorySize + 63) / 64;
+    waitingHead = new int[memorySize + 1];
+    waitingTail = new int[memorySize + 1];
+    waiting = new long[(memorySize + 64) / 64];
+  }
+
+  /**
+   * Get the most lanes a run can have, so that the memory of all the lanes
+   * together stays within a fixed budget.
+   * @param memorySize The number of memory locations of each lane.
+   * @return The most input vectors {@link #run(List, long)} accepts, at least 1.
+   */
+  public static int getMaxLanes(int memorySize) {
+    return Math.max(1, LANE_MEMORY_BUDGET / memorySize);
+  }
+
+  /**
+   * Whether lanes run together. Programs that might modify their own code
+   * are run one lane at a time instead.
+   * @return true if the lanes are run in lockstep.
+   */
+  public boolean isLockstep() {
+    return lockstep;
+  }
+
+  /**
+   * Sets where the number of instructions executed, halts and invalid
+   * instructions are reported. By default this is {@link Metrics#getGlobal()}.
+   * @param metrics The metrics, or null to not report anything.
+   */
+  public void setMetrics(Metrics metrics) {
+    this.metrics = metrics;
+  }
+
+  /**
+   * Turns recording the coverage of each lane on or off, see
+   * {@link #getCoverage(int, CoverageMap)}.
+   * @param coverage Whether to record coverage.
+   */
+  public void setCoverage(boolean coverage) {
+    this.coverage = coverage;
+  }
+
+  /**
+   * Get which instructions and branch directions a lane ran in the last run.
+   * Nothing is covered unless coverage was turned on before the run.
+   * @param lane The lane.
+   * @param into The map to fill in, replacing what it held before.
+   */
+  public void getCoverage(int lane, CoverageMap into) {
+    into.clear();
+    if (covered) {
+      into.merge(laneCoverage, lane * coverageWords * 3, coverageWords);
+    }
+  }
+
+  /**
+   * Runs the program once for each input vector, starting from a freshly
+   * loaded memory each time. The results replace those of any earlier run.
+   *
+   * @param inputVectors The input for each lane.
+   * @param maxCycles The most instructions any single lane may execute.
+   * @throws IllegalArgumentException If there are more input vectors than
+   *     {@link #getMaxLanes(int)} allows.
+   */
+  public void run(List<int[]> inputVectors, long maxCycles) {
+    if (inputVectors.size() > getMaxLanes(memorySize)) {
+      throw new IllegalArgumentException(inputVectors.size() + " lanes is more than the "
+          + getMaxLanes(memorySize) + " allowed with " + memorySize + " memory locations");
+    }
+    reset(inputVectors);
+    if (!lockstep) {
+      runSeparately(inputVectors, maxCycles);
+      return;
+    }
+
+    // Every lane starts at address 0
+    for (int lane = 0; lane < lanes; lane++) {
+      nextLane[lane] = lane + 1 < lanes ? lane + 1 : -1;
+    }
+    if (lanes > 0) {
+      enqueue(0, 0, lanes - 1);
+    }
+
+    long executed = 0;
+    int address;
+    while ((address = lowestWaiting()) >= 0) {
+      int lane = waitingHead[address];
+      waitingHead[address] = -1;
+      waiting[address >>> 6] &= ~(1L << address);
+      fallThroughHead = -1;
+      branchHead = -1;
+
+      if (address == memorySize) {
+        // Fetching past the end of memory is invalid but isn't a cycle
+        for (; lane >= 0; lane = nextLane[lane]) {
+          finish(lane, cycles[lane] >= maxCycles
+              ? HaltReason.CYCLE_LIMIT : HaltReason.INVALID_INSTRUCTION);
+        }
+        continue;
+      }
+      executed += execute(lane, address, opcodes[address], operands[address], maxCycles);
+
+      enqueue(address + 1, fallThroughHead, fallThroughTail);
+      enqueue(operands[address], branchHead, branchTail);
+    }
+
+    if (metrics != null) {
+      metrics.instructionsExecuted(executed);
+    }
+  }
+
+  /**
+   * Executes one instruction for every lane in a list, sending each lane on
+   * to the fall through or branch list unless it stops.
+   *
+   * @param first The first lane in the list.
+   * @return The number of lanes that executed the instruction.
+   */
+  private long execute(int first, int address, int opcode, int operand, long maxCycles) {
+    long executed = 0;
+    int lane = first;
+    while (lane >= 0) {
+      int following = nextLane[lane];
+      if (cycles[lane] >= maxCycles) {
+        finish(lane, HaltReason.CYCLE_LIMIT);
+        lane = following;
+        continue;
+      }
+      cycles[lane]++;
+      executed++;
+
+      int accumulator = accumulators[lane];
+      switch (opcode) {
+        // Halt opcode
+        case 0:
+          finish(lane, HaltReason.HALTED);
+          break;
+        // Add opcode
+        case 1:
+          accumulators[lane] = accumulator + memory[lane * memorySize + operand];
+          fallThrough(lane);
+          break;
+        // Subtract opcode
+        case 2:
+          accumulators[lane] = accumulator - memory[lane * memorySize + operand];
+          fallThrough(lane);
+          break;
+        // Store opcode
+        case 3:
+          memory[lane * memorySize + operand] = accumulator;
+          fallThrough(lane);
+          break;
+        // Load opcode
+        case 5:
+          accumulators[lane] = memory[lane * memorySize + operand];
+          fallThrough(lane);
+          break;
+        // Branch always opcode
+        case 6:
+          branch(lane);
+          break;
+        // Branch if zero opcode
+        case 7:
+          if (accumulator == 0) {
+            branch(lane);
+          } else {
+            fallThrough(lane);
+          }
+          break;
+        // Branch if zero or positive opcode
+        case 8:
+          if (accumulator >= 0) {
+            branch(lane);
+          } else {
+            fallThrough(lane);
+          }
+          break;
+        // i/o opcode
+        case 9:
+          if (operand == 1) {
+            if (inputPositions[lane] == inputEnds[lane]) {
+              finish(lane, HaltReason.NO_INPUT);
+              break;
+            }
+            accumulators[lane] = inputs[inputPositions[lane]++];
+          } else if (operand == 2) {
+            outputs[lane].append(accumulator).append('\n');
+          } else if (operand == 22) {
+            outputs[lane].append((char) accumulator);
+          }
+          fallThrough(lane);
+          break;
+        // All other opcodes are invalid
+        default:
+          finish(lane, HaltReason.INVALID_INSTRUCTION);
+      }
+      HaltReason stopped = haltReasons[lane];
+      if (coverage && stopped != HaltReason.NO_INPUT
+          && stopped != HaltReason.INVALID_INSTRUCTION) {
+        // As in Computer, only instructions that complete are covered
+        cover(lane, address, opcode, accumulator);
+      }
+      lane = following;
+    }
+    return executed;
+  }
+
+  /**
+   * Records that a lane executed an address and, for BRZ and BRP, which way it went.
+   */
+  private void cover(int lane, int address, int opcode, int accumulator) {
+    int base = lane * coverageWords * 3 + (address >>> 6);
+    laneCoverage[base] |= 1L << address;
+    if (opcode == 7 || opcode == 8) {
+      boolean taken = opcode == 7 ? accumulator == 0 : accumulator >= 0;
+      laneCoverage[base + (taken ? coverageWords : coverageWords * 2)] |= 1L << address;
+    }
+  }
+
+  private void fallThrough(int lane) {
+    nextLane[lane] = -1;
+    if (fallThroughHead < 0) {
+      fallThroughHead = lane;
+    } else {
+      nextLane[fallThroughTail] = lane;
+    }
+    fallThroughTail = lane;
+  }
+
+  private void branch(int lane) {
+    nextLane[lane] = -1;
+    if (branchHead < 0) {
+      branchHead = lane;
+    } else {
+      nextLane[branchTail] = lane;
+    }
+    branchTail = lane;
+  }
+
+  /**
+   * Adds a list of lanes to those waiting at an address.
+   */
+  private void enqueue(int address, int head, int tail) {
+    if (head < 0) {
+      return;
+    }
+    if (waitingHead[address] < 0) {
+      waitingHead[address] = head;
+      waiting[address >>> 6] |= 1L << address;
+      firstWaitingWord = Math.min(firstWaitingWord, address >>> 6);
+    } else {
+      nextLane[waitingTail[address]] = head;
+    }
+    waitingTail[address] = tail;
+  }
+
+  /**
+   * Finds the lowest address with waiting lanes, carrying on from the
+   * lowest word that might have any.
+   * @return The address, or -1 if every lane has stopped.
+   */
+  private int lowestWaiting() {
+    for (int word = firstWaitingWord; word < waiting.length; word++) {
+      if (waiting[word] != 0) {
+        firstWaitingWord = word;
+        return (word << 6) + Long.numberOfTrailingZeros(waiting[word]);
+      }
+    }
+    firstWaitingWord = waiting.length;
+    return -1;
+  }
+
+  private void finish(int lane, HaltReason reason) {
+    haltReasons[lane] = reason;
+    if (metrics != null) {
+      if (reason == HaltReason.HALTED) {
+        metrics.halted();
+      } else if (reason == HaltReason.INVALID_INSTRUCTION) {
+        metrics.invalidInstruction();
+      }
+    }
+  }
+
+  /**
+   * Loads the program into every lane and lays out the input.
+   */
+  private void reset(List<int[]> inputVectors) {
+    if (inputVectors.size() != lanes) {
+      lanes = inputVectors.size();
+      // Lanes run separately don't need their own memory
+      memory = new int[lockstep ? Math.multiplyExact(lanes, memorySize) : 0];
+      accumulators = new int[lanes];
+      cycles = new long[lanes];
+      haltReasons = new HaltReason[lanes];
+      outputs = new StringBuilder[lanes];
+      inputPositions = new int[lanes];
+      inputEnds = new int[lanes];
+      nextLane = new int[lanes];
+    }
+    covered = coverage;
+    if (coverage) {
+      if (laneCoverage.length < lanes * coverageWords * 3) {
+        laneCoverage = new long[Math.multiplyExact(lanes, coverageWords * 3)];
+      } else {
+        Arrays.fill(laneCoverage, 0);
+      }
+    }
+
+    int total = 0;
+    for (int[] vector : inputVectors) {
+      total = Math.addExact(total, vector.length);
+    }
+    if (inputs.length < total) {
+      inputs = new int[total];
+    }
+
+    int position = 0;
+    for (int lane = 0; lane < lanes; lane++) {
+      if (lockstep) {
+        System.arraycopy(image, 0, memory, lane * memorySize, memorySize);
+      }
+      accumulators[lane] = 0;
+      cycles[lane] = 0;
+      haltReasons[lane] = null;
+      outputs[lane] = new StringBuilder();
+
+      int[] vector = inputVectors.get(lane);
+      System.arraycopy(vector, 0, inputs, position, vector.length);
+      inputPositions[lane] = position;
+      position += vector.length;
+      inputEnds[lane] = position;
+    }
+    Arrays.fill(waitingHead, -1);
+    Arrays.fill(waiting, 0);
+    firstWaitingWord = waiting.length;
+  }
+
+  /**
+   * Runs each lane on its own computer, for programs that can't run in lockstep.
+   */
+  private void runSeparately(List<int[]> inputVectors, long maxCycles) {
+    Computer computer = new Computer(memorySize);
+    QueueInputChannel channel = new QueueInputChannel();
+    StringWriter transcript = new StringWriter();
+    CoverageMap map = coverage ? new CoverageMap(memorySize) : null;
+    computer.setMetrics(metrics);
+    computer.setCoverageMap(map);
+    computer.registerInputChannel(channel);
+    computer.registerOutputSink(new StreamingOutputSink(transcript));
+
+    for (int lane = 0; lane < lanes; lane++) {
+      computer.load(program);
+      transcript.getBuffer().setLength(0);
+      channel.setInput(inputVectors.get(lane));
+
+      RunResult result = computer.run(maxCycles);
+      accumulators[lane] = result.getAccumulator();
+      cycles[lane] = result.getCycles();
+      haltReasons[lane] = result.getHaltReason();
+      outputs[lane].append(transcript.getBuffer());
+      if (map != null) {
+        map.copyTo(laneCoverage, lane * coverageWords * 3);
+      }
+    }
+  }
+
+  /**
+   * Get the number of lanes in the last run.
+   * @return The number of input vectors given to {@link #run(List, long)}.
+   */
+  public int getLaneCount() {
+    return lanes;
+  }
+
+  public HaltReason getHaltReason(int lane) {
+    return haltReasons[lane];
+  }
+
+  public long getCycles(int lane) {
+    return cycles[lane];
+  }
+
+  public int getAccumulator(int lane) {
+    return accumulators[lane];
+  }
+
+  /**
+   * Get everything a lane output, in the same form as a {@link StreamingOutputSink}.
+   * @param lane The lane.
+   * @return The output, numbers one per line.
+   */
+  public String getOutput(int lane) {
+    return outputs[lane].toString();
+  }
+}
@@ -0,0 +1,129 @@
+package computer.model;
+
+/**
+ * Spots programs that are stuck in a loop they can never leave. Without input
+ * the computer is deterministic, so if the entire machine state (memory,
+ * accumulator and program counter) is ever exactly repeated the program will
+ * loop forever.
+ *
+ * <p>The state is only checked when a backward branch is taken as every loop
+ * must contain one. A hash of memory is kept up to date as memory is written
+ * so checking the state is cheap, and Brent's algorithm is used to decide
+ * which state to remember: a copy is taken after 1, 2, 4, 8... checks so any
+ * cycle is found without having to store more than one state. A matching hash
+ * is confirmed by comparing the full state so there are no false positives.
+ * Nothing is allocated once the detector has been constructed.
+ *
+ * <p>Reading input makes the future unpredictable, so any remembered state is
+ * forgotten whenever input is read.
+ *
+ * @author tomblanchard
+ *
+ */
+class LoopDetector {
+  private final int[] memory;
+
+  // Hash of the current contents of memory, updated on every write.
+  private long memoryHash;
+
+  // The remembered state.
+  private final int[] savedMemory;
+  private int savedAccumulator;
+  private int savedProgramCounter;
+  private long savedHash;
+  private boolean saved = false;
+
+  // Brent's algorithm, remember a new state when checks reaches power.
+  private long power = 1;
+  private long checks = 0;
+
+  /**
+   * Constructs a loop detector.
+   * @param memory The memory of the computer being watched.
+   */
+  LoopDetector(int[] memory) {
+    this.memory = memory;
+    this.savedMemory = new int[memory.length];
+    reset();
+  }
+
+  /**
+   * Recalculates the memory hash and forgets any remembered state. Must be
+   * called whenever memory is changed other than through {@link #memoryWritten}.
+   */
+  void reset() {
+    memoryHash = 0;
+    for (int address = 0; address < memory.length; address++) {
+      memoryHash ^= hash(address, memory[address]);
+    }
+    inputRead();
+  }
+
+  /**
+   * Forgets any remembered state as the program's behaviour now depends on input.
+   */
+  void inputRead() {
+    saved = false;
+    power = 1;
+    checks = 0;
+  }
+
+  /**
+   * Updates the memory hash after a write.
+   * @param address The address written to.
+   * @param oldValue The value before the write.
+   * @param newValue The value after the write.
+   */
+  void memoryWritten(int address, int oldValue, int newValue) {
+    memoryHash ^= hash(address, oldValue) ^ hash(address, newValue);
+  }
+
+  /**
+   * Checks the state of the computer after a backward branch has been taken.
+   * @param accumulator The contents of the accumulator.
+   * @param programCounter The program counter (the branch target).
+   * @return true if this exact state has been seen before.
+   */
+  boolean backwardBranch(int accumulator, int programCounter) {
+    long stateHash = memoryHash ^ mix(accumulator * 0x9E3779B97F4A7C15L)
+        ^ mix(~(long) programCounter);
+
+    if (saved && stateHash == savedHash && accumulator == savedAccumulator
+        && programCounter == savedProgramCounter && sameMemory()) {
+      return true;
+    }
+
+    if (++checks == power) {
+      System.arraycopy(memory, 0, savedMemory, 0, memory.length);
+      savedAccumulator = accumulator;
+      savedProgramCounter = programCounter;
+      savedHash = stateHash;
+      saved = true;
+      power <<= 1;
+      checks = 0;
+    }
+    return false;
+  }
+
+  private boolean sameMemory() {
+    for (int address = 0; address < memory.length; address++) {
+      if (memory[address] != savedMemory[address]) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  private static long hash(int address, int value) {
+    return mix(((long) address << 32) | (value & 0xFFFFFFFFL));
+  }
+
+  /**
+   * Scrambles the bits of a value (the SplitMix64 finaliser).
+   */
+  private static long mix(long value) {
+    value = (value ^ (value >>> 30)) * 0xBF58476D1CE4E5B9L;
+    value = (value ^ (value >>> 27)) * 0x94D049BB133111EBL;
+    return value ^ (value >>> 31);
+  }
+}
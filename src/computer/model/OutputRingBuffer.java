@@ -0,0 +1,122 @@
+package computer.model;
+
+/**
+ * Keeps the most recent values output by the computer in a fixed size ring
+ * of primitives. Nothing is allocated when a value is written, strings are
+ * only built when the contents are asked for (eg for display).
+ *
+ * @author tomblanchard
+ *
+ */
+public class OutputRingBuffer implements OutputSink {
+  private final int[] values;
+  private final boolean[] characters;
+
+  // Index the next value will be written to and the number of values held.
+  private int next = 0;
+  private int size = 0;
+
+  // Incremented every time the contents change.
+  private long modifications = 0;
+
+  /**
+   * Constructs a ring buffer.
+   * @param capacity The number of values kept.
+   */
+  public OutputRingBuffer(int capacity) {
+    values = new int[capacity];
+    characters = new boolean[capacity];
+  }
+
+  @Override
+  public void write(int value, boolean character) {
+    values[next] = value;
+    characters[next] = character;
+    next = (next + 1) % values.length;
+    if (size < values.length) {
+      size++;
+    }
+    modifications++;
+  }
+
+  /**
+   * Empties the buffer.
+   */
+  public void clear() {
+    next = 0;
+    size = 0;
+    modifications++;
+  }
+
+  /**
+   * Removes the most recently written value. A value that was pushed out of
+   * the buffer by that write is not brought back.
+   */
+  public void retract() {
+    if (size > 0) {
+      next = (next - 1 + values.length) % values.length;
+      size--;
+      modifications++;
+    }
+  }
+
+  /**
+   * Get a count that changes every time the contents of the buffer change.
+   * @return The number of times the buffer has been written to or cleared.
+   */
+  public long getModificationCount() {
+    return modifications;
+  }
+
+  public int capacity() {
+    return values.length;
+  }
+
+  public int size() {
+    return size;
+  }
+
+  /**
+   * Get a value from the buffer.
+   * @param age How many values ago the value was written, 0 is the most recent.
+   * @return The value.
+   */
+  public int getValue(int age) {
+    return values[index(age)];
+  }
+
+  /**
+   * Whether a value was written as a character.
+   * @param age How many values ago the value was written, 0 is the most recent.
+   * @return true if the value should be shown as a character.
+   */
+  public boolean isCharacter(int age) {
+    return characters[index(age)];
+  }
+
+  private int index(int age) {
+    if (age < 0 || age >= size) {
+      throw new IndexOutOfBoundsException("No output value " + age);
+    }
+    return (next - 1 - age + values.length) % values.length;
+  }
+
+  /**
+   * Get the contents as strings, most recent first. Slots that have not been
+   * written are empty strings.
+   * @return One string per slot in the buffer.
+   */
+  public String[] toStrings() {
+    String[] strings = new String[values.length];
+    for (int age = 0; age < strings.length; age++) {
+      if (age >= size) {
+        strings[age] = "";
+      } else if (isCharacter(age)) {
+        strings[age] = "" + (char) getValue(age);
+      } else {
+        strings[age] = "" + getValue(age);
+      }
+    }
+    return strings;
+  }
+}
@@ -0,0 +1,12 @@
+package computer.model;
+
+/**
+ * Interface to represent somewhere the output of the computer can be sent.
+ * Anything can register, as long as it can deal with the computer writing
+ * numbers and characters to it.
+ * @author tomblanchard
+ *
+ */
+public interface OutputSink {
+  void write(int value, boolean character);
+}
@@ -0,0 +1,144 @@
+package computer.model;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.Arrays;
+
+/**
+ * Counts how often each address and each opcode is executed, and how often
+ * each conditional branch (BRZ and BRP) is taken. Attach one to a computer
+ * with {@link Computer#setProfiler(Profiler)}. The counts are plain longs
+ * updated by the thread running the computer, readers on other threads may
+ * see them slightly out of date.
+ *
+ * @author tomblanchard
+ *
+ */
+public final class Profiler {
+  private static final int OPCODES = 10;
+
+  private final long[] executions;
+  private final long[] opcodeExecutions = new long[OPCODES];
+  private final long[] branchesTaken;
+  private final long[] branchesNotTaken;
+  private long total = 0;
+
+  /**
+   * Constructs a profiler for a computer with the default memory size.
+   */
+  public Profiler() {
+    this(Computer.DEFAULT_MEMORY_SIZE);
+  }
+
+  /**
+   * Constructs a profiler.
+   * @param memorySize The number of memory addresses.
+   */
+  public Profiler(int memorySize) {
+    executions = new long[memorySize];
+    branchesTaken = new long[memorySize];
+    branchesNotTaken = new long[memorySize];
+  }
+
+  /**
+   * Counts an executed instruction.
+   * @param address The address it was fetched from.
+   * @param opcode Its opcode, 0-9.
+   */
+  void executed(int address, int opcode) {
+    executions[address]++;
+    opcodeExecutions[opcode]++;
+    total++;
+  }
+
+  /**
+   * Counts a conditional branch.
+   * @param address The address of the branch instruction.
+   * @param taken Whether the branch was taken.
+   */
+  void branched(int address, boolean taken) {
+    if (taken) {
+      branchesTaken[address]++;
+    } else {
+      branchesNotTaken[address]++;
+    }
+  }
+
+  /**
+   * Sets every count back to 0.
+   */
+  public void reset() {
+    Arrays.fill(executions, 0);
+    Arrays.fill(opcodeExecutions, 0);
+    Arrays.fill(branchesTaken, 0);
+    Arrays.fill(branchesNotTaken, 0);
+    total = 0;
+  }
+
+  public int getMemorySize() {
+    return executions.length;
+  }
+
+  public long getExecutions(int address) {
+    return executions[address];
+  }
+
+  public long getOpcodeExecutions(int opcode) {
+    return opcodeExecutions[opcode];
+  }
+
+  public long getBranchesTaken(int address) {
+    return branchesTaken[address];
+  }
+
+  public long getBranchesNotTaken(int address) {
+    return branchesNotTaken[address];
+  }
+
+  /**
+   * Get the total number of instructions counted.
+   * @return The number of instructions executed since the last reset.
+   */
+  public long getTotal() {
+    return total;
+  }
+
+  /**
+   * Get the count of the most executed address, eg to scale a heatmap.
+   * @return The highest count of any address.
+   */
+  public long getMaxExecutions() {
+    long max = 0;
+    for (long count : executions) {
+      max = Math.max(max, count);
+    }
+    return max;
+  }
+
+  /**
+   * Writes the counts as CSV. There is one row for each address that has been
+   * executed and one for each opcode that has been executed:
+   * <pre>
+   *   type,key,executions,taken,not_taken
+   *   address,3,120,40,80
+   *   opcode,7,120,,
+   * </pre>
+   * @param writer Where the CSV is written.
+   * @throws IOException If the writer fails.
+   */
+  public void writeCsv(Writer writer) throws IOException {
+    writer.write("type,key,executions,taken,not_taken\n");
+    for (int address = 0; address < executions.length; address++) {
+      if (executions[address] != 0) {
+        writer.write("address," + address + "," + executions[address] + ","
+            + branchesTaken[address] + "," + branchesNotTaken[address] + "\n");
+      }
+    }
+    for (int opcode = 0; opcode < OPCODES; opcode++) {
+      if (opcodeExecutions[opcode] != 0) {
+        writer.write("opcode," + opcode + "," + opcodeExecutions[opcode] + ",,\n");
+      }
+    }
+    writer.flush();
+  }
+}
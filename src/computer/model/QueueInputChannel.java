@@ -0,0 +1,60 @@
+package computer.model;
+
+import java.util.ArrayDeque;
+import java.util.Queue;
+
+/**
+ * An input channel that hands out input from a queue rather than asking
+ * the user. Useful for running programs without a UI. Once the queue is
+ * empty no more input is provided.
+ *
+ * @author tomblanchard
+ *
+ */
+public class QueueInputChannel implements InputChannel {
+
+  private final Queue<Integer> queue = new ArrayDeque<Integer>();
+
+  public QueueInputChannel() {
+  }
+
+  /**
+   * Constructs a channel that will provide each of the values in turn.
+   * @param values The input values.
+   */
+  public QueueInputChannel(int[] values) {
+    setInput(values);
+  }
+
+  /**
+   * Replaces any remaining input with values.
+   * @param values The input values.
+   */
+  public void setInput(int[] values) {
+    queue.clear();
+    for (int value : values) {
+      queue.add(value);
+    }
+  }
+
+  /**
+   * Adds a value to the end of the queue.
+   * @param value The value to be added.
+   */
+  public void add(int value) {
+    queue.add(value);
+  }
+
+  /**
+   * Get the amount of input not yet read.
+   * @return The number of values left in the queue.
+   */
+  public int remaining() {
+    return queue.size();
+  }
+
+  @Override
+  public Integer readInput() {
+    return queue.poll();
+  }
+}
@@ -0,0 +1,58 @@
+package computer.model;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.io.UncheckedIOException;
+
+/**
+ * An input channel that reads whitespace separated integers from a
+ * {@link Reader}, eg standard input. Values are only read as the program asks
+ * for them, so a program can be driven interactively from a terminal. Once
+ * the reader is exhausted no more input is provided.
+ *
+ * @author tomblanchard
+ *
+ */
+public class ReaderInputChannel implements InputChannel {
+  private final Reader reader;
+  private final StringBuilder token = new StringBuilder();
+  private boolean finished = false;
+
+  public ReaderInputChannel(Reader reader) {
+    this.reader = reader;
+  }
+
+  /**
+   * Reads the next value.
+   * @return The value, or null if the reader has no more values.
+   * @throws NumberFormatException If the next value is not an integer.
+   * @throws UncheckedIOException If the reader fails.
+   */
+  @Override
+  public Integer readInput() {
+    if (finished) {
+      return null;
+    }
+    token.setLength(0);
+    try {
+      int c;
+      // Skip leading whitespace then take everything up to the next
+      while ((c = reader.read()) != -1) {
+        if (!Character.isWhitespace(c)) {
+          token.append((char) c);
+        } else if (token.length() > 0) {
+          break;
+        }
+      }
+      if (c == -1) {
+        finished = true;
+      }
+    } catch (IOException e) {
+      throw new UncheckedIOException(e);
+    }
+    if (token.length() == 0) {
+      return null;
+    }
+    return Integer.valueOf(token.toString());
+  }
+}
@@ -0,0 +1,55 @@
+package computer.model;
+
+/**
+ * The outcome of running the {@link Computer} to completion (or until
+ * its cycle budget is exhausted). Holds why the run stopped, how many
+ * instructions were executed and the final state of the accumulator and
+ * output register.
+ *
+ * @author tomblanchard
+ *
+ */
+public class RunResult {
+  private final HaltReason haltReason;
+  private final long cycles;
+  private final int accumulator;
+  private final String[] output;
+
+  /**
+   * Constructs a RunResult.
+   * @param haltReason Why the run stopped.
+   * @param cycles The number of whole instructions executed during the run.
+   * @param accumulator The contents of the accumulator when the run stopped.
+   * @param output The contents of the output register when the run stopped.
+   */
+  public RunResult(HaltReason haltReason, long cycles, int accumulator, String[] output) {
+    this.haltReason = haltReason;
+    this.cycles = cycles;
+    this.accumulator = accumulator;
+    this.output = output;
+  }
+
+  public HaltReason getHaltReason() {
+    return haltReason;
+  }
+
+  public long getCycles() {
+    return cycles;
+  }
+
+  public int getAccumulator() {
+    return accumulator;
+  }
+
+  /**
+   * Get the output register at the end of the run, most recent value first.
+   * @return The contents of the output register.
+   */
+  public String[] getOutput() {
+    return output;
+  }
+
+  public String toString() {
+    return haltReason + " after " + cycles + " cycles, ACC: " + accumulator;
+  }
+}
@@ -0,0 +1,72 @@
+package computer.model;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Streams everything the computer outputs to a {@link Writer}. Numbers are
+ * written one per line and characters are written as they are. Numbers are
+ * converted into a reused buffer so writing does not allocate.
+ *
+ * @author tomblanchard
+ *
+ */
+public class StreamingOutputSink implements OutputSink {
+  private final Writer writer;
+
+  // Big enough for any int and the trailing new line.
+  private final char[] digits = new char[12];
+
+  public StreamingOutputSink(Writer writer) {
+    this.writer = writer;
+  }
+
+  /**
+   * Constructs a sink that writes UTF-8 text to a stream.
+   * @param stream The stream to write to.
+   */
+  public StreamingOutputSink(OutputStream stream) {
+    this(new BufferedWriter(new OutputStreamWriter(stream, StandardCharsets.UTF_8)));
+  }
+
+  /**
+   * Writes a value to the underlying writer.
+   * @throws UncheckedIOException If the writer fails.
+   */
+  @Override
+  public void write(int value, boolean character) {
+    try {
+      if (character) {
+        writer.write((char) value);
+      } else {
+        // Fill the buffer backwards from the new line
+        int position = digits.length - 1;
+        digits[position] = '\n';
+        long remaining = Math.abs((long) value);
+        do {
+          digits[--position] = (char) ('0' + remaining % 10);
+          remaining /= 10;
+        } while (remaining != 0);
+        if (value < 0) {
+          digits[--position] = '-';
+        }
+        writer.write(digits, position, digits.length - position);
+      }
+    } catch (IOException e) {
+      throw new UncheckedIOException(e);
+    }
+  }
+
+  /**
+   * Flushes the underlying writer.
+   * @throws IOException If the writer fails.
+   */
+  public void flush() throws IOException {
+    writer.flush();
+  }
+}
@@ -0,0 +1,154 @@
+package computer.model;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Reads a trace file written by a {@link TraceRecorder}. The reader is
+ * positioned on one record at a time, either by stepping through them with
+ * {@link #next()} or by jumping straight to any record with {@link #seek(long)}.
+ * The file is memory mapped so seeking doesn't read through the records before.
+ *
+ * @author tomblanchard
+ *
+ */
+public final class TraceReader implements Closeable {
+  private final FileChannel channel;
+  private final int memorySize;
+  private final long records;
+
+  private MappedByteBuffer region;
+  private long regionNumber = -1;
+  private long index = -1;
+  private int offset;
+
+  /**
+   * Opens a trace file.
+   * @param file The trace file.
+   * @throws IOException If the file can't be read or isn't a trace file.
+   */
+  public TraceReader(Path file) throws IOException {
+    channel = FileChannel.open(file, StandardOpenOption.READ);
+    ByteBuffer header = ByteBuffer.allocate(TraceRecorder.HEADER_SIZE)
+        .order(ByteOrder.LITTLE_ENDIAN);
+    while (header.hasRemaining() && channel.read(header, header.position()) >= 0) {
+      // Keep reading until the header is full or the file ends
+    }
+    header.flip();
+    if (header.remaining() < TraceRecorder.HEADER_SIZE || header.getInt() != TraceRecorder.MAGIC
+        || header.getInt() != TraceRecorder.RECORD_SIZE) {
+      channel.close();
+      throw new IOException("Not a trace file: " + file);
+    }
+    memorySize = header.getInt();
+    records = header.getLong();
+  }
+
+  /**
+   * Get the number of memory addresses of the traced computer.
+   * @return The memory size the instructions are decoded with.
+   */
+  public int getMemorySize() {
+    return memorySize;
+  }
+
+  /**
+   * Get the number of records in the trace.
+   * @return The number of records, one per instruction executed.
+   */
+  public long size() {
+    return records;
+  }
+
+  /**
+   * Moves to a record.
+   * @param index The record to move to, 0 is the first instruction executed.
+   * @throws IndexOutOfBoundsException If there is no such record.
+   * @throws IOException If the file can't be read.
+   */
+  public void seek(long index) throws IOException {
+    if (index < 0 || index >= records) {
+      throw new IndexOutOfBoundsException("No record " + index + " in a trace of " + records);
+    }
+    long number = index / TraceRecorder.REGION_RECORDS;
+    if (number != regionNumber) {
+      long start = TraceRecorder.HEADER_SIZE + number * TraceRecorder.REGION_SIZE;
+      long size = Math.min(TraceRecorder.REGION_SIZE,
+          (records - number * TraceRecorder.REGION_RECORDS) * TraceRecorder.RECORD_SIZE);
+      region = channel.map(FileChannel.MapMode.READ_ONLY, start, size);
+      region.order(ByteOrder.LITTLE_ENDIAN);
+      regionNumber = number;
+    }
+    this.index = index;
+    offset = (int) (index % TraceRecorder.REGION_RECORDS) * TraceRecorder.RECORD_SIZE;
+  }
+
+  /**
+   * Moves to the next record.
+   * @return false if there are no more records.
+   * @throws IOException If the file can't be read.
+   */
+  public boolean next() throws IOException {
+    if (index + 1 >= records) {
+      return false;
+    }
+    seek(index + 1);
+    return true;
+  }
+
+  /**
+   * Get the index of the current record.
+   * @return The index, or -1 before the first record has been moved to.
+   */
+  public long getIndex() {
+    return index;
+  }
+
+  public int getAddress() {
+    return region.getInt(offset);
+  }
+
+  public int getInstruction() {
+    return region.getInt(offset + 4);
+  }
+
+  public int getOpcode() {
+    return getInstruction() / memorySize;
+  }
+
+  public int getOperand() {
+    return getInstruction() % memorySize;
+  }
+
+  public int getAccumulator() {
+    return region.getInt(offset + 8);
+  }
+
+  /**
+   * Did the current instruction write to memory.
+   * @return true if {@link #getWriteAddress()} and {@link #getWriteValue()} are valid.
+   */
+  public boolean isWrite() {
+    return getWriteAddress() >= 0;
+  }
+
+  public int getWriteAddress() {
+    return region.getInt(offset + 12);
+  }
+
+  public int getWriteValue() {
+    return region.getInt(offset + 16);
+  }
+
+  @Override
+  public void close() throws IOException {
+    region = null;
+    channel.close();
+  }
+}
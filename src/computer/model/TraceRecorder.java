@@ -0,0 +1,218 @@
+package computer.model;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Records every instruction a {@link Computer} executes to a file so that a
+ * program can be debugged after it has run, see {@link TraceReader}.
+ *
+ * <p>Records are written into a small reused buffer which is copied into the
+ * file through memory mapped regions whenever it fills up, so recording an
+ * instruction never allocates or makes a system call.
+ *
+ * <p>The file starts with a 20 byte header (the magic number, the record size,
+ * the memory size of the computer and the number of records) followed by
+ * fixed size records, all little endian:
+ * <pre>
+ *   int address of the instruction
+ *   int the instruction (opcode * memory size + operand)
+ *   int accumulator after the instruction
+ *   int address written to, or -1 if nothing was written
+ *   int value written
+ * </pre>
+ * The file is mapped a whole region at a time, so it can be longer than the
+ * records in it. Only the number of records in the header counts.
+ *
+ * @author tomblanchard
+ *
+ */
+public final class TraceRecorder implements Closeable {
+  static final int MAGIC = 0x544D434D;
+  static final int HEADER_SIZE = 20;
+  static final int RECORD_SIZE = 20;
+
+  // The file is mapped a region at a time, regions never split a record.
+  static final int REGION_RECORDS = 1 << 22;
+  static final long REGION_SIZE = (long) REGION_RECORDS * RECORD_SIZE;
+
+  private static final int DEFAULT_BUFFER_RECORDS = 4096;
+
+  private final FileChannel channel;
+  private final int memorySize;
+  private final ByteBuffer buffer;
+  private MappedByteBuffer region;
+  private long nextRegion = 0;
+  private long records = 0;
+  private boolean closed = false;
+
+  /**
+   * Constructs a recorder for a computer with the default memory size,
+   * writing to file and replacing anything already there.
+   * @param file The trace file.
+   * @throws IOException If the file can't be created.
+   */
+  public TraceRecorder(Path file) throws IOException {
+    this(file, DEFAULT_BUFFER_RECORDS);
+  }
+
+  /**
+   * Constructs a recorder for a computer with the default memory size,
+   * writing to file and replacing anything already there.
+   * @param file The trace file.
+   * @param bufferRecords The number of records buffered between writes to the file.
+   * @throws IOException If the file can't be created.
+   */
+  public TraceRecorder(Path file, int bufferRecords) throws IOException {
+    this(file, bufferRecords, Computer.DEFAULT_MEMORY_SIZE);
+  }
+
+  /**
+   * Constructs a recorder writing to file, replacing anything already there.
+   * @param file The trace file.
+   * @param bufferRecords The number of records buffered between writes to the file.
+   * @param memorySize The number of memory addresses of the computer being
+   *     traced, needed to decode its instructions.
+   * @throws IOException If the file can't be created.
+   * @throws IllegalArgumentException If bufferRecords isn't positive or is too large.
+   */
+  public TraceRecorder(Path file, int bufferRecords, int memorySize) throws IOException {
+    if (bufferRecords < 1 || bufferRecords > Integer.MAX_VALUE / RECORD_SIZE) {
+      throw new IllegalArgumentException("Invalid buffer size " + bufferRecords);
+    }
+    this.memorySize = memorySize;
+    channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.READ,
+        StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+    try {
+      buffer = ByteBuffer.allocate(bufferRecords * RECORD_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+      writeHeader();
+    } catch (IOException | RuntimeException | Error e) {
+      // Don't leak the file if the recorder can't be finished
+      try {
+        channel.close();
+      } catch (IOException suppressed) {
+        e.addSuppressed(suppressed);
+      }
+      throw e;
+    }
+  }
+
+  /**
+   * Records an executed instruction.
+   * @param address The address the instruction was fetched from.
+   * @param instruction The instruction (opcode * memory size + operand).
+   * @param accumulator The accumulator after the instruction.
+   * @param writeAddress The address written to, or -1 if nothing was written.
+   * @param writeValue The value written.
+   * @throws UncheckedIOException If the file can't be written.
+   */
+  public void record(int address, int instruction, int accumulator,
+      int writeAddress, int writeValue) {
+    if (!buffer.hasRemaining()) {
+      spill();
+    }
+    buffer.putInt(address)
+        .putInt(instruction)
+        .putInt(accumulator)
+        .putInt(writeAddress)
+        .putInt(writeValue);
+    records++;
+  }
+
+  public int getMemorySize() {
+    return memorySize;
+  }
+
+  /**
+   * Get the number of records written so far.
+   * @return The number of records.
+   */
+  public long getRecordCount() {
+    return records;
+  }
+
+  /**
+   * Writes any buffered records to the file and updates the header so that
+   * a {@link TraceReader} can see them.
+   * @throws UncheckedIOException If the file can't be written.
+   */
+  public void flush() {
+    spill();
+    try {
+      writeHeader();
+    } catch (IOException e) {
+      throw new UncheckedIOException(e);
+    }
+  }
+
+  /**
+   * Writes any buffered records and closes the file. The file is trimmed to
+   * the records actually written where the platform allows a mapped file to
+   * be shrunk, otherwise the rest of the last region is left in place.
+   * @throws IOException If the file can't be written.
+   */
+  @Override
+  public void close() throws IOException {
+    if (closed) {
+      return;
+    }
+    closed = true;
+    try {
+      spill();
+      writeHeader();
+      if (region != null) {
+        region.force();
+      }
+      try {
+        channel.truncate(HEADER_SIZE + records * RECORD_SIZE);
+      } catch (IOException e) {
+        // Windows can't shrink a file that is still mapped, the header
+        // already says how many records there are
+      }
+    } finally {
+      region = null;
+      channel.close();
+    }
+  }
+
+  /**
+   * Copies the buffered records into the mapped file.
+   */
+  private void spill() {
+    buffer.flip();
+    try {
+      while (buffer.hasRemaining()) {
+        if (region == null || !region.hasRemaining()) {
+          region = channel.map(FileChannel.MapMode.READ_WRITE,
+              HEADER_SIZE + nextRegion * REGION_SIZE, REGION_SIZE);
+          nextRegion++;
+        }
+        // Both sizes are whole records so a record is never split
+        int count = Math.min(buffer.remaining(), region.remaining());
+        ByteBuffer part = buffer.duplicate();
+        part.limit(buffer.position() + count);
+        region.put(part);
+        buffer.position(buffer.position() + count);
+      }
+    } catch (IOException e) {
+      throw new UncheckedIOException(e);
+    } finally {
+      buffer.clear();
+    }
+  }
+
+  private void writeHeader() throws IOException {
+    ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+    header.putInt(MAGIC).putInt(RECORD_SIZE).putInt(memorySize).putLong(records).flip();
+    while (header.hasRemaining()) {
+      channel.write(header, header.position());
+    }
+  }
+}
@@ -0,0 +1,143 @@
+package computer.model;
+
+/**
+ * A bounded history of the changes made by each instruction so that the
+ * computer can be stepped backwards. Each instruction is recorded as a
+ * fixed size delta packed into longs:
+ * <pre>
+ *   accumulator and program counter before the instruction was fetched
+ *   instruction and address registers and input register before the fetch
+ *   the address written to (or -1) and the value it held before
+ * </pre>
+ * Entries live in a ring so the memory used never grows, once the ring is
+ * full the oldest instructions are forgotten. Nothing is allocated once the
+ * journal has been constructed.
+ *
+ * @author tomblanchard
+ *
+ */
+class UndoJournal {
+  private static final int LONGS_PER_ENTRY = 3;
+  private static final long NO_WRITE = -1L << 32;
+
+  private final long[] entries;
+  private final int capacity;
+
+  // Index of the slot the next entry is written to and the number of entries held.
+  private int next = 0;
+  private int size = 0;
+
+  /**
+   * Constructs a journal.
+   * @param capacity The number of instructions that can be undone.
+   */
+  UndoJournal(int capacity) {
+    this.capacity = capacity;
+    entries = new long[capacity * LONGS_PER_ENTRY];
+  }
+
+  int capacity() {
+    return capacity;
+  }
+
+  boolean isEmpty() {
+    return size == 0;
+  }
+
+  void clear() {
+    next = 0;
+    size = 0;
+  }
+
+  /**
+   * Records the state before an instruction is fetched.
+   * @param accumulator The accumulator.
+   * @param programCounter The program counter.
+   * @param instruction The instruction and address registers (opcode * memory size + operand).
+   * @param input The input register.
+   */
+  void fetched(int accumulator, int programCounter, int instruction, int input) {
+    int base = next * LONGS_PER_ENTRY;
+    entries[base] = pack(accumulator, programCounter);
+    entries[base + 1] = pack(instruction, input);
+    entries[base + 2] = NO_WRITE;
+    next = (next + 1) % capacity;
+    if (size < capacity) {
+      size++;
+    }
+  }
+
+  /**
+   * Records a write to memory by the most recently fetched instruction.
+   * @param address The address written to.
+   * @param oldValue The value it held before the write.
+   */
+  void written(int address, int oldValue) {
+    if (size > 0) {
+      entries[latest() + 2] = pack(address, oldValue);
+    }
+  }
+
+  /**
+   * Forgets the write recorded against the most recent instruction, once it
+   * has been undone.
+   */
+  void clearWrite() {
+    entries[latest() + 2] = NO_WRITE;
+  }
+
+  /**
+   * Forgets the most recent instruction.
+   */
+  void pop() {
+    next = (next - 1 + capacity) % capacity;
+    size--;
+  }
+
+  int getAccumulator() {
+    return high(entries[latest()]);
+  }
+
+  int getProgramCounter() {
+    return low(entries[latest()]);
+  }
+
+  int getInstruction() {
+    return high(entries[latest() + 1]);
+  }
+
+  int getInput() {
+    return low(entries[latest() + 1]);
+  }
+
+  /**
+   * Get the address written to by the most recent instruction.
+   * @return The address, or -1 if nothing was written.
+   */
+  int getWriteAddress() {
+    return high(entries[latest() + 2]);
+  }
+
+  int getWriteOldValue() {
+    return low(entries[latest() + 2]);
+  }
+
+  private int latest() {
+    if (size == 0) {
+      throw new IllegalStateException("Nothing to undo");
+    }
+    return ((next - 1 + capacity) % capacity) * LONGS_PER_ENTRY;
+  }
+
+  private static long pack(int high, int low) {
+    return ((long) high << 32) | (low & 0xFFFFFFFFL);
+  }
+
+  private static int high(long packed) {
+    return (int) (packed >>> 32);
+  }
+
+  private static int low(long packed) {
+    return (int) packed;
+  }
+}
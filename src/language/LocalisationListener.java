@@ -1,6 +1,4 @@
-package ui;
-
-import language.Messages;
+package language;
 
 /**
  * Classes that want to be informed of changes to the application
@@ -1,11 +1,11 @@
 package language;
 
+import computer.CoreMessages;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Locale;
 import java.util.MissingResourceException;
 import java.util.ResourceBundle;
-import ui.LocalisationListener;
 
 /**
  * Deals with localising all of the text strings in JLMC.
@@ -15,11 +15,8 @@ import ui.LocalisationListener;
  */
 public class Messages {
   
-  //The search string used to find and replace tokens in strings.
-  private static final String replaceTokenSearch = "\\*\\!\\!\\*";
-  
   private static Locale currentLocale = null;
-  private static ResourceBundle strings;
+  private static volatile ResourceBundle strings;
   
   //The default error message when a string cannot be found.
   private static final String error = "<LOCALISATION ERROR>";
@@ -40,6 +37,7 @@ public class Messages {
     if (!locale.equals(currentLocale)) {
       currentLocale = locale;
       strings = ResourceBundle.getBundle("LMCStrings", currentLocale);
+      CoreMessages.setLocale(currentLocale);
       
       for (LocalisationListener listener : listeners) {
         listener.relocalise();
@@ -56,6 +54,10 @@ public class Messages {
    * @return The translated string.
    */
   public static String getTranslatedString(String messageName) {
+    // Without a UI nothing may have set the locale, default to English
+    if (strings == null) {
+      loadDefaultLocale();
+    }
     String localisedString = "";
     try {
       localisedString = strings.getString(messageName);
@@ -65,6 +67,12 @@ public class Messages {
     return localisedString;
   }
   
+  private static synchronized void loadDefaultLocale() {
+    if (strings == null) {
+      setCurrentLocale(Locale.ENGLISH);
+    }
+  }
+
   /**
    * Register a {@link LocalisationListener} to be informed of changes to the
    * locale.
@@ -96,6 +104,6 @@ public class Messages {
    * @return The modified string.
    */
   public static String insertToken(final String inputString, String token) {
-    return inputString.replaceAll(replaceTokenSearch, token);
+    return CoreMessages.insertToken(inputString, token);
   }
 }
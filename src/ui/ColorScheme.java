@@ -16,4 +16,6 @@ public class ColorScheme {
   public static final Color blueDark = new Color(19, 133, 187);
   public static final Color blueLight = new Color(130, 213, 247);
   public static final Color comment = new Color(112, 112, 112);
+  public static final Color breakpoint = new Color(232, 57, 57);
+  public static final Color watchpoint = new Color(240, 200, 40);
 }
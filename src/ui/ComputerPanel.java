@@ -1,22 +1,31 @@
 package ui;
 
 import computer.instruction.Mnemonic;
+import computer.metrics.Metrics;
 import computer.model.Computer;
+import computer.model.ComputerListener;
+import computer.model.ComputerSnapshot;
+import computer.model.Profiler;
+import java.awt.Color;
 import java.awt.Dimension;
 import java.awt.Font;
 import java.awt.FontMetrics;
 import java.awt.Graphics;
 import java.awt.Graphics2D;
-import java.beans.PropertyChangeEvent;
-import java.beans.PropertyChangeListener;
+import java.awt.Rectangle;
+import java.awt.event.MouseAdapter;
+import java.awt.event.MouseEvent;
+import java.awt.image.BufferedImage;
 import java.util.ArrayList;
 import javax.swing.JPanel;
+import javax.swing.Timer;
+import language.LocalisationListener;
 import language.Messages;
 
 //TODO: Tidy and comment
 //TODO: highlight current executing line.
 public final class ComputerPanel extends JPanel implements 
-                  PropertyChangeListener, LocalisationListener {
+                  ComputerListener, LocalisationListener {
 
   private static final long serialVersionUID = 1L;
   private Computer computer;
@@ -28,6 +37,55 @@ public final class ComputerPanel extends JPanel implements
   private int nextBoxY = 0;
   private final Font font = new Font(Font.MONOSPACED, Font.PLAIN, 12);
 
+  // The computer may be stepped far faster than the screen can be refreshed, so
+  // changes are only noted as they happen and the panel is redrawn at most
+  // REFRESH_RATE times a second.
+  private static final int REFRESH_RATE = 60;
+  private volatile boolean changed = true;
+  private final Timer refreshTimer = new Timer(1000 / REFRESH_RATE, e -> refresh());
+
+  // The snapshot the last refresh was worked out from, only the parts of the
+  // panel that have changed since then are redrawn.
+  private ComputerSnapshot lastRefreshed = null;
+
+  // Where each register box was last drawn, indexed by the ComputerSnapshot
+  // register constants, and whether its label takes two lines.
+  private final Rectangle[] registerBounds = new Rectangle[ComputerSnapshot.CPU_SPEED + 1];
+  private final boolean[] twoLineLabels = new boolean[ComputerSnapshot.CPU_SPEED + 1];
+
+  // Everything that doesn't change while a program runs (the outlines, the
+  // address labels and the register names) is drawn once into this image. It
+  // is drawn again when the panel is resized or relocalised, or when a program
+  // using a different amount of memory is loaded.
+  private BufferedImage background = null;
+  private double backgroundScale = 0;
+  private int backgroundHighestUsedAddress = -1;
+
+  // Whether the profiler's counts are shown as a heatmap over the memory grid,
+  // and the total they were last drawn at.
+  private boolean heatmap = false;
+  private long heatmapTotal = -1;
+  private static final Color[] HEAT_COLORS = new Color[16];
+
+  // The strings shown for values, built once so that painting doesn't have to.
+  private static final String[] MEMORY_STRINGS = new String[1000];
+  private static final String[] NUMBER_STRINGS = new String[1000];
+  private static final String[] CHARACTER_STRINGS = new String[128];
+
+  static {
+    for (int i = 0; i < MEMORY_STRINGS.length; i++) {
+      MEMORY_STRINGS[i] = String.format("%03d", i);
+      NUMBER_STRINGS[i] = Integer.toString(i);
+    }
+    for (int i = 0; i < CHARACTER_STRINGS.length; i++) {
+      CHARACTER_STRINGS[i] = String.valueOf((char) i);
+    }
+    for (int i = 0; i < HEAT_COLORS.length; i++) {
+      HEAT_COLORS[i] = new Color(ColorScheme.orange.getRed(), ColorScheme.orange.getGreen(),
+          ColorScheme.orange.getBlue(), 40 + 200 * i / (HEAT_COLORS.length - 1));
+    }
+  }
+
   /**
    * Constructs a computer panel.
    * @param computer the computer
@@ -37,46 +95,283 @@ public final class ComputerPanel extends JPanel implements
     this.setMinimumSize(new Dimension(500, 400));
     this.setVisible(true);
     Messages.registerLocalisationListener(this);
+    refreshTimer.start();
+
+    // Click on a memory address for a breakpoint, shift-click for a watchpoint
+    this.addMouseListener(new MouseAdapter() {
+      @Override
+      public void mouseClicked(MouseEvent e) {
+        int address = addressAt(e.getX(), e.getY());
+        if (address < 0) {
+          return;
+        }
+        synchronized (computer) {
+          if (e.isShiftDown()) {
+            computer.setWatchpoint(address, !computer.isWatchpoint(address));
+          } else {
+            computer.setBreakpoint(address, !computer.isBreakpoint(address));
+          }
+        }
+      }
+    });
+  }
+
+  /**
+   * Shows or hides the profiler's counts as a heatmap over the memory grid.
+   * The hottest addresses are shaded the most strongly.
+   * @param show Whether to show the heatmap.
+   */
+  public void setHeatmap(boolean show) {
+    heatmap = show;
+    heatmapTotal = -1;
+    this.repaint();
+  }
+
+  public boolean isHeatmap() {
+    return heatmap;
+  }
+
+  /**
+   * Finds the memory address drawn at a point on the panel.
+   * @return The address or -1 if the point isn't on the memory grid.
+   */
+  private int addressAt(int x, int y) {
+    int cellSpacing = availableWidth() / 10;
+    if (cellSpacing <= 0 || x < memoryOffsetx || y < memoryOffsety - 10) {
+      return -1;
+    }
+    int column = (x - memoryOffsetx) / cellSpacing;
+    int row = (y - memoryOffsety + 10) / cellSpacing;
+    if (column > 9 || row > 9) {
+      return -1;
+    }
+    return row * 10 + column;
+  }
+
+  /**
+   * Redraws the parts of the panel that have changed since the last refresh. Each
+   * changed area is painted straight away as Swing would otherwise merge them all
+   * into one (potentially very large) area.
+   */
+  private void refresh() {
+    if (!changed) {
+      return;
+    }
+    changed = false;
+
+    ComputerSnapshot state = computer.getSnapshot();
+    ComputerSnapshot last = lastRefreshed;
+    lastRefreshed = state;
+
+    Profiler profiler = computer.getProfiler();
+    if (heatmap && profiler != null && profiler.getTotal() != heatmapTotal) {
+      // Counts change on every instruction, so redraw the whole grid
+      heatmapTotal = profiler.getTotal();
+      int width = availableWidth();
+      paintImmediately(memoryOffsetx, memoryOffsety - 10, width + 1, width + 1);
+    }
+
+    if (last == null || !isShowing() || registerBounds[ComputerSnapshot.PROGRAM_COUNTER] == null
+        || state.isRegisterChanged(ComputerSnapshot.HIGHEST_USED_ADDRESS, last.getVersion())) {
+      this.repaint();
+      return;
+    }
+
+    long since = last.getVersion();
+    for (int i = 0; i < state.getMemorySize(); i++) {
+      if (state.isMemoryChanged(i, since)) {
+        paintImmediately(cellBounds(i));
+      }
+    }
+
+    // The highlight moves from the old program counter to the new one
+    if (state.isRegisterChanged(ComputerSnapshot.PROGRAM_COUNTER, since)) {
+      paintCell(last.getProgramCounter());
+      paintCell(state.getProgramCounter());
+    }
+
+    for (int register = 0; register < registerBounds.length; register++) {
+      if (registerBounds[register] != null && state.isRegisterChanged(register, since)) {
+        paintImmediately(registerBounds[register]);
+      }
+    }
+
+    if (state.isRegisterChanged(ComputerSnapshot.STATUS, since)) {
+      paintImmediately(explanationBounds());
+    }
+  }
+
+  private void paintCell(int address) {
+    if (address >= 0 && address < 100) {
+      paintImmediately(cellBounds(address));
+    }
+  }
+
+  /**
+   * Width (and height) of the memory grid at the current size of the panel.
+   */
+  private int availableWidth() {
+    Dimension size = this.getSize();
+    return ((size.width < size.height) ? size.width : size.height) - 150;
+  }
+
+  /**
+   * Area covered by a memory cell, its address label and its value. Values
+   * wider than the cell can spill over so the area is generous.
+   */
+  private Rectangle cellBounds(int address) {
+    int cellSpacing = availableWidth() / 10;
+    int x = memoryOffsetx + cellSpacing * (address % 10);
+    int y = 3 + memoryOffsety + cellSpacing * (address / 10);
+    return new Rectangle(x, y - 12, cellSpacing + 20, 34);
+  }
+
+  /**
+   * Area covered by the explanation of the current instruction.
+   */
+  private Rectangle explanationBounds() {
+    int width = availableWidth();
+    return new Rectangle(memoryOffsetx, memoryOffsety + (width / 10) * 10, width + 1, 101);
   }
 
   public Computer getComputer() {
     return computer;
   }
 
-  private void drawInBox(Graphics2D g, String label, int value, int x) {
+  private static String memoryString(int value) {
+    if (value >= 0 && value < MEMORY_STRINGS.length) {
+      return MEMORY_STRINGS[value];
+    }
+    return String.format("%03d", value);
+  }
+
+  private static String numberString(int value) {
+    if (value >= 0 && value < NUMBER_STRINGS.length) {
+      return NUMBER_STRINGS[value];
+    }
+    return Integer.toString(value);
+  }
+
+  /**
+   * Draws the outline and label of a register box into the background.
+   */
+  private void drawBox(Graphics2D g, int register, String label, int x) {
     String[] parts = label.split("\\ ");
-    if (parts.length == 2) {
-      g.setColor(ColorScheme.orange);
-      g.drawRect(x, nextBoxY, 115, 49);
-      g.setColor(ColorScheme.green);
+    boolean twoLines = parts.length == 2;
+    twoLineLabels[register] = twoLines;
+    registerBounds[register] = new Rectangle(x, nextBoxY, 116, twoLines ? 50 : 36);
+
+    g.setColor(ColorScheme.orange);
+    g.drawRect(x, nextBoxY, 115, twoLines ? 49 : 35);
+    g.setColor(ColorScheme.green);
+    if (twoLines) {
       g.drawString(parts[0], x + 2, nextBoxY + 12);
       g.drawString(parts[1], x + 2, nextBoxY + 26);
-      g.drawString("" + value, x + 2, nextBoxY + 40);
       nextBoxY += 54;
     } else {
-      g.setColor(ColorScheme.orange);
-      g.drawRect(x, nextBoxY, 115, 35);
-      g.setColor(ColorScheme.green);
       g.drawString(label, x + 2, nextBoxY + 12);
-      g.drawString("" + value, x + 2, nextBoxY + 26);
       nextBoxY += 39;
     }
   }
 
+  /**
+   * Draws the outline and label of the output box into the background.
+   */
+  private void drawOutputBox(Graphics2D g, String label, int x) {
+    registerBounds[ComputerSnapshot.OUTPUT] = new Rectangle(x, nextBoxY, 116, 89);
 
-  private void drawOutputBox(Graphics2D g, String label, String[] values, int x) {
     g.setColor(ColorScheme.orange);
     g.drawRect(x, nextBoxY, 115, 88);
     g.setColor(ColorScheme.green);
-
     g.drawString(label, x + 2, nextBoxY + 12);
+    nextBoxY += 93;
+  }
+
+  /**
+   * Draws the value of a register inside its box, unless the box is outside
+   * of the area being painted.
+   */
+  private void drawValue(Graphics2D g, Rectangle clip, int register, String value) {
+    Rectangle bounds = registerBounds[register];
+    if (clip.intersects(bounds)) {
+      g.drawString(value, bounds.x + 2, bounds.y + (twoLineLabels[register] ? 40 : 26));
+    }
+  }
 
-    for (int i = 0; i < values.length; i++) {
-      g.drawString(values[i], x + 2, nextBoxY + 12 + ((i + 1) * 14));
+  private void drawOutput(Graphics2D g, Rectangle clip, ComputerSnapshot state) {
+    Rectangle bounds = registerBounds[ComputerSnapshot.OUTPUT];
+    if (!clip.intersects(bounds)) {
+      return;
     }
-    nextBoxY += 93;
+    for (int age = 0; age < state.getOutputSize(); age++) {
+      int value = state.getOutputValue(age);
+      String text;
+      if (!state.isOutputCharacter(age)) {
+        text = numberString(value);
+      } else if (value >= 0 && value < CHARACTER_STRINGS.length) {
+        text = CHARACTER_STRINGS[value];
+      } else {
+        text = String.valueOf((char) value);
+      }
+      g.drawString(text, bounds.x + 2, bounds.y + 12 + ((age + 1) * 14));
+    }
+  }
+
+  /**
+   * Gets the background image, drawing it again if it is out of date.
+   */
+  private BufferedImage getBackground(Dimension size, double scale, int highestUsedAddress) {
+    int width = (int) Math.ceil(size.width * scale);
+    int height = (int) Math.ceil(size.height * scale);
+    if (background != null && background.getWidth() == width && background.getHeight() == height
+        && backgroundScale == scale && backgroundHighestUsedAddress == highestUsedAddress) {
+      return background;
+    }
+
+    BufferedImage image = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+    Graphics2D g = image.createGraphics();
+    // Draw at the same resolution as the screen
+    g.scale(scale, scale);
+    g.setColor(ColorScheme.background);
+    g.fillRect(0, 0, size.width, size.height);
+    g.setFont(font);
+
+    int availableWidth = availableWidth();
+    spacing = availableWidth / 10;
+
+    g.setColor(ColorScheme.orange);
+    g.drawRect(memoryOffsetx, memoryOffsety - 10, availableWidth, availableWidth);
+    for (int i = 0; i < 100; i++) {
+      int x = memoryOffsetx + spacing * (i % 10);
+      int y = 3 + memoryOffsety + spacing * (i / 10);
+      g.setColor(i < highestUsedAddress + 1 ? ColorScheme.blueLight : ColorScheme.blueDark);
+      g.drawString(numberString(i), x + 8, y);
+      g.drawRect(x + 6, y + 4, 25, 15);
+    }
+
+    int textX = 10;
+    nextBoxY = 10;
+    drawBox(g, ComputerSnapshot.PROGRAM_COUNTER,
+        Messages.getTranslatedString("PROGRAM_COUNTER"), textX);
+    drawBox(g, ComputerSnapshot.INSTRUCTION_REGISTER,
+        Messages.getTranslatedString("INSTRUCTION_REGISTER"), textX);
+    drawBox(g, ComputerSnapshot.ADDRESS_REGISTER,
+        Messages.getTranslatedString("ADDRESS_REGISTER"), textX);
+    drawBox(g, ComputerSnapshot.ACCUMULATOR, Messages.getTranslatedString("ACCUMULATOR"), textX);
+    drawBox(g, ComputerSnapshot.INPUT, Messages.getTranslatedString("INPUT"), textX);
+    drawOutputBox(g, Messages.getTranslatedString("OUTPUT"), textX);
+    drawBox(g, ComputerSnapshot.CPU_SPEED, Messages.getTranslatedString("CPU_SPEED"), textX);
+
+    g.setColor(ColorScheme.orange);
+    g.drawRect(memoryOffsetx, memoryOffsety + spacing * 10, availableWidth, 100);
+    g.dispose();
+
+    background = image;
+    backgroundScale = scale;
+    backgroundHighestUsedAddress = highestUsedAddress;
+    return image;
   }
-  
+
   private ArrayList<String> fitToWidth(int width, String text, Graphics context) {
     
     String[] tokens = text.split("\\ ");
@@ -105,87 +400,128 @@ public final class ComputerPanel extends JPanel implements
   }
 
   /**
-   * Paints this computer panel. 
+   * Paints this computer panel. The unchanging parts come from the background
+   * image and only the values are drawn on top.
    */
   public void paint(Graphics g) {
     Dimension size = this.getSize();
+    if (size.width <= 0 || size.height <= 0) {
+      return;
+    }
+    long paintStart = System.nanoTime();
     Graphics2D graphic2d = (Graphics2D) g;
 
-    graphic2d.setColor(ColorScheme.background);
-    graphic2d.fillRect(0, 0, size.width, size.height);
+    // Draw from a single snapshot so a computer running on another thread
+    // can't change part way through drawing
+    ComputerSnapshot state = computer.getSnapshot();
 
-    graphic2d.setFont(font);
-    graphic2d.setColor(ColorScheme.orange);
+    graphic2d.drawImage(getBackground(size, graphic2d.getTransform().getScaleX(),
+        state.getHighestUsedAddress()), 0, 0, size.width, size.height, null);
 
-    int availableWidth = ((size.width < size.height) ? size.width : size.height) - 150;
+    // Only draw what falls inside the area being painted
+    Rectangle clip = g.getClipBounds();
+    if (clip == null) {
+      clip = new Rectangle(0, 0, size.width, size.height);
+    }
 
+    graphic2d.setFont(font);
+    int availableWidth = availableWidth();
     spacing = availableWidth / 10;
 
-    int currentPC = computer.getProgramCounter();
-
-    graphic2d.drawRect(memoryOffsetx, memoryOffsety - 10, availableWidth, availableWidth);
+    // Counts are shaded on a log scale so that loops don't drown out everything else
+    Profiler profiler = heatmap ? computer.getProfiler() : null;
+    double heatScale = 0;
+    if (profiler != null) {
+      heatScale = (HEAT_COLORS.length - 1) / Math.log1p(Math.max(1, profiler.getMaxExecutions()));
+    }
 
+    int currentPC = state.getProgramCounter();
     for (int i = 0; i < 100; i++) {
       int x = memoryOffsetx + spacing * (i % 10);
       int y = 3 + memoryOffsety + spacing * (i / 10);
+      if (clip.x > x + spacing + 20 || clip.x + clip.width < x
+          || clip.y > y + 22 || clip.y + clip.height < y - 12) {
+        continue;
+      }
 
-      String memory = String.format("%03d", computer.getMemory(i));
+      if (profiler != null && profiler.getExecutions(i) > 0) {
+        // Counts may have grown since the maximum was found
+        int heat = (int) (Math.log1p(profiler.getExecutions(i)) * heatScale);
+        graphic2d.setColor(HEAT_COLORS[Math.min(heat, HEAT_COLORS.length - 1)]);
+        graphic2d.fillRect(x + 7, y + 5, 24, 14);
+      }
 
-      if (i < computer.getHighestUsedAddress() + 1) {
+      if (i < state.getHighestUsedAddress() + 1) {
         graphic2d.setColor(ColorScheme.blueLight);
-
       } else {
         graphic2d.setColor(ColorScheme.blueDark);
       }
-      graphic2d.drawString(memory, x + 7, offset + y);
+      graphic2d.drawString(memoryString(state.getMemory(i)), x + 7, offset + y);
 
+      // The label and outline of the current cell are drawn over the background
       if (i == currentPC) {
         graphic2d.setColor(ColorScheme.green);
+        graphic2d.drawString(numberString(i), x + 8, y);
+        graphic2d.drawRect(x + 6, y + 4, 25, 15);
+      }
+      if (state.isBreakpoint(i)) {
+        graphic2d.setColor(ColorScheme.breakpoint);
+        graphic2d.drawRect(x + 6, y + 4, 25, 15);
+      }
+      if (state.isWatchpoint(i)) {
+        graphic2d.setColor(ColorScheme.watchpoint);
+        graphic2d.drawRect(x + 5, y + 3, 27, 17);
       }
-
-      graphic2d.drawString("" + i, x + 8, y);
-
-      graphic2d.drawRect(x + 6, y + 4, 25, 15);
     }
 
-    graphic2d.setColor(ColorScheme.green);
-
     // Draw various registers
-    int textX = 10;
-    int textY = 10;
-    nextBoxY = textY;
-    drawInBox(graphic2d, Messages.getTranslatedString(
-        "PROGRAM_COUNTER"), computer.getProgramCounter(), textX);
-    drawInBox(graphic2d, Messages.getTranslatedString(
-        "INSTRUCTION_REGISTER"), computer.getInstructionRegister(), textX);
-    drawInBox(graphic2d, Messages.getTranslatedString(
-        "ADDRESS_REGISTER"), computer.getAddressRegister(), textX);
-    drawInBox(graphic2d, Messages.getTranslatedString(
-        "ACCUMULATOR"), computer.getAccumulator(), textX);
-    drawInBox(graphic2d, Messages.getTranslatedString("INPUT"), computer.getInput(), textX);
-    drawOutputBox(graphic2d, Messages.getTranslatedString("OUTPUT"), computer.getOutput(), textX);
-
-    graphic2d.setColor(ColorScheme.orange);
-    graphic2d.drawRect(memoryOffsetx, memoryOffsety + spacing * 10, availableWidth, 100);
     graphic2d.setColor(ColorScheme.green);
-    
+    drawValue(graphic2d, clip, ComputerSnapshot.PROGRAM_COUNTER,
+        numberString(state.getProgramCounter()));
+    drawValue(graphic2d, clip, ComputerSnapshot.INSTRUCTION_REGISTER,
+        numberString(state.getInstructionRegister()));
+    drawValue(graphic2d, clip, ComputerSnapshot.ADDRESS_REGISTER,
+        numberString(state.getAddressRegister()));
+    drawValue(graphic2d, clip, ComputerSnapshot.ACCUMULATOR,
+        numberString(state.getAccumulator()));
+    drawValue(graphic2d, clip, ComputerSnapshot.INPUT, numberString(state.getInput()));
+    drawOutput(graphic2d, clip, state);
+
+    int speed = state.getCpuSpeed();
+    drawValue(graphic2d, clip, ComputerSnapshot.CPU_SPEED,
+        speed == Computer.UNTHROTTLED_CPU_SPEED
+        ? Messages.getTranslatedString("UNTHROTTLED") : numberString(speed));
+
+    if (clip.intersects(explanationBounds())) {
+      drawExplanation(graphic2d, state, availableWidth);
+    }
+
+    Metrics.getGlobal().painted(System.nanoTime() - paintStart);
+  }
+
+  /**
+   * Draws what the computer has just done and an explanation of the instruction.
+   */
+  private void drawExplanation(Graphics2D graphic2d, ComputerSnapshot state, int availableWidth) {
     String message = "";
-    if (computer.isHalted()) {
+    if (state.isHalted()) {
       message = Messages.getTranslatedString("HALTED");
     } else {
-      boolean fetch = computer.isFetch();
-      String name = Mnemonic.instructionName(computer.getFullCurrentInstruction());
+      boolean fetch = state.isFetch();
+      String name = Mnemonic.instructionName(state.getFullCurrentInstruction(),
+          state.getMemorySize());
 
       if (fetch) {
         message = Messages.getTranslatedString(
-            "FETCHED") + ": " + computer.getFullCurrentInstruction() + "(" + name + ")";
+            "FETCHED") + ": " + state.getFullCurrentInstruction() + "(" + name + ")";
       } else {
         message = Messages.getTranslatedString(
-            "EXECUTED") + ": " + computer.getFullCurrentInstruction() + "(" + name + ")\n";
+            "EXECUTED") + ": " + state.getFullCurrentInstruction() + "(" + name + ")\n";
         
         
         //Fit the text to the available width
-        String description = Mnemonic.explanation(computer.getFullCurrentInstruction());
+        String description = Mnemonic.explanation(state.getFullCurrentInstruction(),
+            state.getMemorySize());
         
         ArrayList<String> explanations = 
             fitToWidth(availableWidth, description, graphic2d);
@@ -200,21 +536,18 @@ public final class ComputerPanel extends JPanel implements
     }
 
     graphic2d.drawString(message, memoryOffsetx + 2, 16 + memoryOffsety + spacing * 10);
-
-    drawInBox(graphic2d, Messages.getTranslatedString("CPU_SPEED"), computer.getCpuSpeed(), textX);
   }
 
   @Override
-  public void propertyChange(PropertyChangeEvent evt) {
-
-    if (evt.getPropertyName().equals("step")) {
-      this.repaint();
-    }
-
+  public void computerChanged() {
+    // May be called from the engine thread, the refresh timer does the drawing
+    changed = true;
   }
 
   @Override
   public void relocalise() {
+    lastRefreshed = null;
+    background = null;
     this.repaint();
   }
 }
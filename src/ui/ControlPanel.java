@@ -1,30 +1,32 @@
 package ui;
 
 import computer.model.Computer;
-import computer.model.InputChannel;
+import computer.model.ComputerListener;
+import computer.model.HaltReason;
 import java.awt.Color;
 import java.awt.Container;
 import java.awt.Dimension;
 import java.awt.GridLayout;
 import java.awt.event.ActionEvent;
 import java.awt.event.ActionListener;
-import java.beans.PropertyChangeEvent;
-import java.beans.PropertyChangeListener;
 import javax.swing.JButton;
 import javax.swing.JOptionPane;
 import javax.swing.JPanel;
-import javax.swing.Timer;
 import javax.swing.border.EmptyBorder;
+import language.LocalisationListener;
 import language.Messages;
 
 
 @SuppressWarnings("serial")
 public class ControlPanel extends JPanel implements 
-          ActionListener, InputChannel, PropertyChangeListener, LocalisationListener {
+          ActionListener, EngineListener, ComputerListener, LocalisationListener {
   
   private JButton run = new JButton(Messages.getTranslatedString("RUN_BUTTON"));
   private JButton stop = new JButton(Messages.getTranslatedString("STOP_BUTTON"));
   private JButton step = new JButton(Messages.getTranslatedString("STEP_BUTTON"));
+  private JButton stepBack = new JButton(Messages.getTranslatedString("STEP_BACK_BUTTON"));
+  private JButton toBreakpoint = new JButton(
+      Messages.getTranslatedString("TO_BREAKPOINT_BUTTON"));
   private JButton faster = new JButton(Messages.getTranslatedString("FASTER_BUTTON"));
   private JButton slower = new JButton(Messages.getTranslatedString("SLOWER_BUTTON"));
   private JButton reset = new JButton(Messages.getTranslatedString("RESET_BUTTON"));
@@ -32,7 +34,12 @@ public class ControlPanel extends JPanel implements
   private static final int UI_PADDING = 4;
 
   private Computer computer;
-  private Timer timer = new Timer(10, this);
+  private EngineThread engine;
+
+  // Whether the user has asked the computer to run (it may be paused waiting for input).
+  private boolean running = false;
+  // Whether it is running flat out to the next breakpoint.
+  private boolean runningToBreakpoint = false;
 
   /**
    * Constructs a control panel for the provided computer.
@@ -43,18 +50,22 @@ public class ControlPanel extends JPanel implements
     Messages.registerLocalisationListener(this);
     this.computer = computer;
     this.setBorder(new EmptyBorder(UI_PADDING, UI_PADDING, UI_PADDING, UI_PADDING));
-    this.setLayout(new GridLayout(1, 6, UI_PADDING, 0));
+    this.setLayout(new GridLayout(1, 8, UI_PADDING, 0));
     
 
     this.add(run);
+    this.add(toBreakpoint);
     this.add(stop);
+    this.add(stepBack);
     this.add(step);
     this.add(slower);
     this.add(faster);
     this.add(reset);
     
     styleButton(run);
+    styleButton(toBreakpoint);
     styleButton(stop);
+    styleButton(stepBack);
     styleButton(step);
     styleButton(slower);
     styleButton(faster);
@@ -66,14 +77,19 @@ public class ControlPanel extends JPanel implements
     this.setPreferredSize(new Dimension(400, 35));
     
     run.addActionListener(this);
+    toBreakpoint.addActionListener(this);
     stop.addActionListener(this);
     step.addActionListener(this);
+    stepBack.addActionListener(this);
     faster.addActionListener(this);
     slower.addActionListener(this);
     reset.addActionListener(this);
     
     this.setBackground(ColorScheme.background);
 
+    engine = new EngineThread(computer, this);
+    engine.start();
+
     setCPUSpeed();
     setReadyToRun();
     this.setVisible(true);
@@ -90,74 +106,172 @@ public class ControlPanel extends JPanel implements
   
   @Override
   public void actionPerformed(ActionEvent e) {
-    if (e.getSource().equals(timer) || e.getSource().equals(step)) {
-      computer.step();
-      if (computer.isHalted()) {
-        setReadyToRun();
-        run.setEnabled(false);
-        step.setEnabled(false);
-        stop.setEnabled(false);
-        reset.setEnabled(true);
-        JOptionPane.showMessageDialog(this.getParent(), Messages.getTranslatedString("HALTED"));
-
+    if (e.getSource().equals(step)) {
+      HaltReason reason;
+      try {
+        synchronized (computer) {
+          reason = computer.step();
+        }
+      } catch (IllegalStateException | ArrayIndexOutOfBoundsException ex) {
+        reason = HaltReason.INVALID_INSTRUCTION;
       }
+      if (reason == HaltReason.NEEDS_INPUT) {
+        askForInput(false);
+      } else if (reason != HaltReason.CYCLE_LIMIT) {
+        engineStopped(reason);
+      }
+      setStepBack();
+    } else if (e.getSource().equals(stepBack)) {
+      synchronized (computer) {
+        computer.stepBack();
+      }
+      setReadyToRun();
     } else if (e.getSource().equals(run)) {
-      setRunning();
+      setRunning(false);
+
+    } else if (e.getSource().equals(toBreakpoint)) {
+      setRunning(true);
 
     } else if (e.getSource().equals(stop)) {
       setReadyToRun();
 
     } else if (e.getSource().equals(faster)) {
-      if (computer.getCpuSpeed() == Computer.MIN_CPU_SPEED) {
-        slower.setEnabled(true);
+      int speed = computer.getCpuSpeed();
+      if (speed == Computer.MAX_CPU_SPEED) {
+        speed = Computer.UNTHROTTLED_CPU_SPEED;
+      } else {
+        speed = Math.min(speed * 2, Computer.MAX_CPU_SPEED);
       }
-      computer.setCpuSpeed(computer.getCpuSpeed() + 1);
-      if (computer.getCpuSpeed() == Computer.MAX_CPU_SPEED) {
-        faster.setEnabled(false);
+      synchronized (computer) {
+        computer.setCpuSpeed(speed);
       }
-
       setCPUSpeed();
     } else if (e.getSource().equals(slower)) {
-      if (computer.getCpuSpeed() == Computer.MAX_CPU_SPEED) {
-        faster.setEnabled(true);
+      int speed = computer.getCpuSpeed();
+      if (speed == Computer.UNTHROTTLED_CPU_SPEED) {
+        speed = Computer.MAX_CPU_SPEED;
+      } else {
+        speed = Math.max(speed / 2, Computer.MIN_CPU_SPEED);
       }
-      computer.setCpuSpeed(computer.getCpuSpeed() - 1);
-
-      if (computer.getCpuSpeed() == Computer.MIN_CPU_SPEED) {
-        slower.setEnabled(false);
+      synchronized (computer) {
+        computer.setCpuSpeed(speed);
       }
       setCPUSpeed();
     } else if (e.getSource().equals(reset)) {
       setReadyToRun();
-      computer.restart();
+      synchronized (computer) {
+        computer.restart();
+      }
+    }
+  }
+
+  /**
+   * Deals with the computer stopping, either while running or after a single step.
+   * @param reason Why the computer stopped.
+   */
+  @Override
+  public void engineStopped(HaltReason reason) {
+    if (reason == HaltReason.NEEDS_INPUT) {
+      askForInput(true);
+    } else if (reason == HaltReason.BREAKPOINT || reason == HaltReason.WATCHPOINT) {
+      // The program can carry on from a breakpoint
+      setReadyToRun();
+    } else {
+      setReadyToRun();
+      run.setEnabled(false);
+      toBreakpoint.setEnabled(false);
+      step.setEnabled(false);
+      stop.setEnabled(false);
+      reset.setEnabled(true);
+      setStepBack();
+      JOptionPane.showMessageDialog(this.getParent(), Messages.getTranslatedString("HALTED"));
     }
   }
 
+  /**
+   * Prompts for input and gives it to the computer. The engine tells us it
+   * needs input some time after it stopped, by when Stop or Reset may have
+   * been pressed, so check the computer still wants it first.
+   * @param whileRunning Whether the engine stopped for input, in which case
+   *     nothing is asked for unless the computer is still meant to be running.
+   */
+  private void askForInput(boolean whileRunning) {
+    synchronized (computer) {
+      if (whileRunning && !running || !computer.isAwaitingInput()) {
+        return;
+      }
+    }
+    Integer value = readInput();
+    if (value == null) {
+      return;
+    }
+    synchronized (computer) {
+      if (whileRunning && !running || !computer.isAwaitingInput()) {
+        return;
+      }
+      computer.supplyInput(value);
+    }
+    if (running) {
+      goEngine();
+    }
+  }
+
+  /**
+   * Only allow stepping back while stopped and when there is something to undo.
+   */
+  private void setStepBack() {
+    boolean canStepBack;
+    synchronized (computer) {
+      canStepBack = computer.canStepBack();
+    }
+    stepBack.setEnabled(!running && canStepBack);
+  }
+
   private void setCPUSpeed() {
-    timer.setDelay(1000 / computer.getCpuSpeed());
+    int speed = computer.getCpuSpeed();
+    faster.setEnabled(speed != Computer.UNTHROTTLED_CPU_SPEED);
+    slower.setEnabled(speed != Computer.MIN_CPU_SPEED);
   }
 
-  private void setRunning() {
+  private void setRunning(boolean toNextBreakpoint) {
     run.setEnabled(false);
+    toBreakpoint.setEnabled(false);
     step.setEnabled(false);
     stop.setEnabled(true);
     reset.setEnabled(false);
-    timer.start();
+    running = true;
+    runningToBreakpoint = toNextBreakpoint;
+    setStepBack();
+    goEngine();
     //speed.setText(Messages.CPU_SPEED + ": " + cpuSpeed + "Hz");
   }
 
+  private void goEngine() {
+    if (runningToBreakpoint) {
+      engine.goFlatOut();
+    } else {
+      engine.go();
+    }
+  }
+
   private void setReadyToRun() {
     run.setEnabled(true);
+    toBreakpoint.setEnabled(true);
     step.setEnabled(true);
     stop.setEnabled(false);
     reset.setEnabled(true);
 
-    timer.stop();
+    running = false;
+    engine.pause();
+    setStepBack();
     //speed.setText(Messages.CPU_SPEED + ": " + cpuSpeed + "Hz");
   }
 
-  @Override
-  public Integer readInput() {
+  /**
+   * Asks the user for input. If the input is not a number the computer is reset.
+   * @return The input or null if no valid input was given.
+   */
+  private Integer readInput() {
 
     Container parent = this.getParent();
     String s = (String) JOptionPane.showInputDialog(
@@ -181,25 +295,26 @@ public class ControlPanel extends JPanel implements
           Messages.getTranslatedString("INPUT_MUST_NUMBER"));
 
       setReadyToRun();
-      computer.restart();
+      synchronized (computer) {
+        computer.restart();
+      }
       return null;
     }
     return i;
   }
 
   @Override
-  public void propertyChange(PropertyChangeEvent evt) {
-    if (evt.getPropertyName().equals("reset")) {
-      //System.out.println("reset");
-      setReadyToRun();
-    }
+  public void computerReset() {
+    setReadyToRun();
   }
 
   @Override
   public void relocalise() {
     run.setText(Messages.getTranslatedString("RUN_BUTTON"));
+    toBreakpoint.setText(Messages.getTranslatedString("TO_BREAKPOINT_BUTTON"));
     stop.setText(Messages.getTranslatedString("STOP_BUTTON"));
     step.setText(Messages.getTranslatedString("STEP_BUTTON"));
+    stepBack.setText(Messages.getTranslatedString("STEP_BACK_BUTTON"));
     faster.setText(Messages.getTranslatedString("FASTER_BUTTON"));
     slower.setText(Messages.getTranslatedString("SLOWER_BUTTON"));
     reset.setText(Messages.getTranslatedString("RESET_BUTTON"));
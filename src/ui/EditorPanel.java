@@ -1,6 +1,7 @@
 package ui;
 
 import computer.ParseException;
+import computer.model.Computer;
 import computer.model.Editor;
 import java.awt.BorderLayout;
 import java.awt.Color;
@@ -47,6 +48,7 @@ import javax.swing.text.View;
 import javax.swing.text.ViewFactory;
 import javax.swing.undo.CannotUndoException;
 import javax.swing.undo.UndoManager;
+import language.LocalisationListener;
 import language.Messages;
 
 @SuppressWarnings("serial")
@@ -269,7 +271,10 @@ public class EditorPanel extends JPanel implements
         editor.setText(codeEditor.format());
         error.setText(Messages.getTranslatedString("EDITOR_SUCCESS_MESSAGE"));
         error.setBackground(green);
-        cp.getComputer().load(codeEditor.getInstructions());
+        Computer computer = cp.getComputer();
+        synchronized (computer) {
+          computer.load(codeEditor.getInstructions());
+        }
         
         cp.repaint();
 
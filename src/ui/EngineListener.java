@@ -0,0 +1,15 @@
+package ui;
+
+import computer.model.HaltReason;
+
+/**
+ * Classes that want to know when the {@link EngineThread} stops running
+ * the computer should implement this interface. Notifications are always
+ * delivered on the Swing thread.
+ *
+ * @author tomblanchard
+ *
+ */
+public interface EngineListener {
+  public void engineStopped(HaltReason reason);
+}
@@ -0,0 +1,146 @@
+package ui;
+
+import computer.model.Computer;
+import computer.model.HaltReason;
+import java.util.concurrent.locks.LockSupport;
+import javax.swing.SwingUtilities;
+
+/**
+ * Runs the computer on its own thread so that the UI stays responsive however
+ * fast the computer is running. At throttled speeds the computer is stepped at
+ * the rate set by {@link Computer#setCpuSpeed(int)}, when unthrottled it is run
+ * flat out in large chunks, as it is when running to a breakpoint. Either way
+ * it stops at breakpoints and watchpoints. The UI is expected to sample the
+ * state of the computer rather than redraw after every step.
+ *
+ * <p>The engine holds the computer's lock while it steps, anything else that
+ * changes the computer while the engine might be running should do the same.
+ * The engine never waits on the Swing thread so this can't deadlock. When the
+ * computer stops for any reason (including needing input) the engine pauses and
+ * its {@link EngineListener} is told on the Swing thread.
+ *
+ * @author tomblanchard
+ *
+ */
+public class EngineThread extends Thread {
+
+  // Number of instructions run between checks for being paused when unthrottled
+  private static final long UNTHROTTLED_CHUNK = 100000;
+
+  private final Computer computer;
+  private final EngineListener listener;
+
+  // Whether the engine should currently be running the computer.
+  private boolean running = false;
+
+  // Whether to ignore the CPU speed and run flat out (eg to the next breakpoint).
+  private boolean flatOut = false;
+
+  /**
+   * Constructs an engine thread for the computer. The thread must be started
+   * before it will do anything.
+   * @param computer The computer to run.
+   * @param listener Told whenever the computer stops.
+   */
+  public EngineThread(Computer computer, EngineListener listener) {
+    super("LMC Engine");
+    this.computer = computer;
+    this.listener = listener;
+    setDaemon(true);
+  }
+
+  /**
+   * Start running the computer.
+   */
+  public synchronized void go() {
+    running = true;
+    flatOut = false;
+    notifyAll();
+  }
+
+  /**
+   * Start running the computer as fast as possible whatever its CPU speed,
+   * until it stops (eg at a breakpoint).
+   */
+  public synchronized void goFlatOut() {
+    running = true;
+    flatOut = true;
+    notifyAll();
+  }
+
+  private synchronized boolean isFlatOut() {
+    return flatOut;
+  }
+
+  /**
+   * Stop running the computer once the current step is complete.
+   */
+  public synchronized void pause() {
+    running = false;
+  }
+
+  public synchronized boolean isRunning() {
+    return running;
+  }
+
+  /**
+   * Waits until the engine is told to run.
+   * @return false if the thread was interrupted and should finish.
+   */
+  private synchronized boolean awaitRunning() {
+    while (!running) {
+      try {
+        wait();
+      } catch (InterruptedException e) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  @Override
+  public void run() {
+    long nextStep = System.nanoTime();
+
+    while (true) {
+      if (!isRunning()) {
+        if (!awaitRunning()) {
+          return;
+        }
+        nextStep = System.nanoTime();
+      }
+
+      int speed = isFlatOut() ? Computer.UNTHROTTLED_CPU_SPEED : computer.getCpuSpeed();
+      HaltReason reason;
+      try {
+        synchronized (computer) {
+          if (speed == Computer.UNTHROTTLED_CPU_SPEED) {
+            reason = computer.run(UNTHROTTLED_CHUNK).getHaltReason();
+          } else {
+            reason = computer.step();
+          }
+        }
+      } catch (IllegalStateException | ArrayIndexOutOfBoundsException e) {
+        reason = HaltReason.INVALID_INSTRUCTION;
+      }
+
+      if (reason != HaltReason.CYCLE_LIMIT) {
+        pause();
+        final HaltReason stopReason = reason;
+        SwingUtilities.invokeLater(() -> listener.engineStopped(stopReason));
+        continue;
+      }
+
+      if (speed != Computer.UNTHROTTLED_CPU_SPEED) {
+        nextStep += 1000000000L / speed;
+        long delay = nextStep - System.nanoTime();
+        if (delay > 0) {
+          LockSupport.parkNanos(delay);
+        } else if (delay < -1000000000L) {
+          // Fallen a long way behind (eg the machine was busy), don't try to catch up
+          nextStep = System.nanoTime();
+        }
+      }
+    }
+  }
+}
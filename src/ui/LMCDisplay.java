@@ -6,14 +6,20 @@ import java.awt.Dimension;
 import java.awt.Graphics;
 import java.awt.event.ActionEvent;
 import java.awt.event.ActionListener;
+import java.io.IOException;
+import java.io.Writer;
 import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
 import java.util.Locale;
 import javax.swing.ImageIcon;
+import javax.swing.JCheckBoxMenuItem;
 import javax.swing.JFileChooser;
 import javax.swing.JFrame;
 import javax.swing.JMenu;
 import javax.swing.JMenuBar;
 import javax.swing.JMenuItem;
+import javax.swing.JOptionPane;
 import javax.swing.JPanel;
 import javax.swing.JSeparator;
 import javax.swing.JSplitPane;
@@ -21,6 +27,7 @@ import javax.swing.JTextArea;
 import javax.swing.filechooser.FileNameExtensionFilter;
 import javax.swing.plaf.basic.BasicSplitPaneDivider;
 import javax.swing.plaf.basic.BasicSplitPaneUI;
+import language.LocalisationListener;
 import language.Messages;
 
 /**
@@ -49,11 +56,20 @@ public class LMCDisplay extends JFrame implements
   private JMenuItem englishItem = new JMenuItem("English");
   private JMenuItem welshItem = new JMenuItem("Cymraeg");
   
+  private JMenu profileMenu = new JMenu(Messages.getTranslatedString("PROFILE"));
+  private JCheckBoxMenuItem heatmapItem = 
+      new JCheckBoxMenuItem(Messages.getTranslatedString("HEATMAP"));
+  private JMenuItem exportProfileItem = 
+      new JMenuItem(Messages.getTranslatedString("EXPORT_PROFILE"));
+
   private JMenu helpMenu = new JMenu(Messages.getTranslatedString("INFORMATION"));
   private JMenuItem aboutItem = new JMenuItem("About");
   
   // Reference to the editor panel so save/load methods can be called
   private EditorPanel ep;
+
+  // Reference to the computer panel to show and export the profile
+  private ComputerPanel cp;
   
   /**
    * Creates a new LMCDisplay.
@@ -63,6 +79,7 @@ public class LMCDisplay extends JFrame implements
    */
   public LMCDisplay(ComputerPanel cp, ControlPanel controlPanel, EditorPanel ep) {
     this.ep = ep;
+    this.cp = cp;
     
     // Set some sensible size limits so that resizing doesn't screw up everything
     this.setDefaultCloseOperation(EXIT_ON_CLOSE);
@@ -77,6 +94,8 @@ public class LMCDisplay extends JFrame implements
     saveItem.addActionListener(this);
     exitItem.addActionListener(this);
     aboutItem.addActionListener(this);
+    heatmapItem.addActionListener(this);
+    exportProfileItem.addActionListener(this);
     
     englishItem.addActionListener(this);
     welshItem.addActionListener(this);
@@ -91,6 +110,10 @@ public class LMCDisplay extends JFrame implements
     languageMenu.add(englishItem);
     languageMenu.add(welshItem);
     
+    menuBar.add(profileMenu);
+    profileMenu.add(heatmapItem);
+    profileMenu.add(exportProfileItem);
+
     menuBar.add(helpMenu);
     helpMenu.add(aboutItem);
   
@@ -156,6 +179,10 @@ public class LMCDisplay extends JFrame implements
       if (returnVal == JFileChooser.APPROVE_OPTION) {
         ep.saveFile(chooser.getSelectedFile());
       }
+    } else if (e.getSource().equals(heatmapItem)) {
+      cp.setHeatmap(heatmapItem.isSelected());
+    } else if (e.getSource().equals(exportProfileItem)) {
+      exportProfile();
     } else if (e.getSource().equals(exitItem)) {
       System.exit(1);
     } else if (e.getSource().equals(englishItem)) {
@@ -194,6 +221,29 @@ public class LMCDisplay extends JFrame implements
     }
   }
 
+  /**
+   * Asks for a file and writes the profiler's counts to it as CSV.
+   */
+  private void exportProfile() {
+    if (cp.getComputer().getProfiler() == null) {
+      return;
+    }
+    JFileChooser chooser = new JFileChooser();
+    chooser.setFileFilter(new FileNameExtensionFilter("CSV files", "csv"));
+    if (chooser.showSaveDialog(this) != JFileChooser.APPROVE_OPTION) {
+      return;
+    }
+
+    try (Writer writer = Files.newBufferedWriter(chooser.getSelectedFile().toPath(),
+        StandardCharsets.UTF_8)) {
+      synchronized (cp.getComputer()) {
+        cp.getComputer().getProfiler().writeCsv(writer);
+      }
+    } catch (IOException ex) {
+      JOptionPane.showMessageDialog(this, ex.getMessage());
+    }
+  }
+
   @Override
   public void relocalise() {
     fileMenu.setText(Messages.getTranslatedString("FILE"));
@@ -201,6 +251,9 @@ public class LMCDisplay extends JFrame implements
     saveItem.setText(Messages.getTranslatedString("SAVE"));
     exitItem.setText(Messages.getTranslatedString("EXIT"));
     languageMenu.setText(Messages.getTranslatedString("LANGUAGE"));
+    profileMenu.setText(Messages.getTranslatedString("PROFILE"));
+    heatmapItem.setText(Messages.getTranslatedString("HEATMAP"));
+    exportProfileItem.setText(Messages.getTranslatedString("EXPORT_PROFILE"));
     helpMenu.setText(Messages.getTranslatedString("INFORMATION"));
   }
 }